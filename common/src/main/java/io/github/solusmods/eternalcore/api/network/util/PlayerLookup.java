@@ -15,6 +15,7 @@ import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @UtilityClass
@@ -23,10 +24,7 @@ public final class PlayerLookup {
      * Returns a collection of players tracking the entity.
      */
     public static Collection<ServerPlayer> tracking(@NonNull Entity entity) {
-        ChunkSource manager = entity.level().getChunkSource();
-        if (!(manager instanceof ServerChunkCache cache))
-            throw new IllegalArgumentException("Only supported on server worlds!");
-        ChunkMap.TrackedEntity trackedEntity = cache.chunkMap.entityMap.get(entity.getId());
+        ChunkMap.TrackedEntity trackedEntity = getTrackedEntity(entity);
         if (trackedEntity == null) return Collections.emptySet();
         return trackedEntity.seenBy.stream().map(ServerPlayerConnection::getPlayer).collect(Collectors.toUnmodifiableSet());
     }
@@ -40,9 +38,35 @@ public final class PlayerLookup {
         return watchers;
     }
 
+    /**
+     * Passes every player tracking the entity to the consumer without copying the tracker set.
+     */
+    public static void forEachTracking(@NonNull Entity entity, @NonNull Consumer<ServerPlayer> consumer) {
+        ChunkMap.TrackedEntity trackedEntity = getTrackedEntity(entity);
+        if (trackedEntity == null) return;
+        for (ServerPlayerConnection connection : trackedEntity.seenBy) {
+            consumer.accept(connection.getPlayer());
+        }
+    }
+
+    /**
+     * Passes the entity itself (only if the entity is a {@link ServerPlayer}) and every player tracking it to the consumer.
+     */
+    public static void forEachTrackingAndSelf(@NonNull Entity entity, @NonNull Consumer<ServerPlayer> consumer) {
+        if (entity instanceof ServerPlayer player) consumer.accept(player);
+        forEachTracking(entity, consumer);
+    }
+
     public static Collection<ServerPlayer> tracking(@NonNull LevelChunk chunk) {
         if (!(chunk.getLevel() instanceof ServerLevel level))
             throw new IllegalArgumentException("Only supported on server worlds!");
         return level.getChunkSource().chunkMap.getPlayers(chunk.getPos(), false);
     }
+
+    private static ChunkMap.TrackedEntity getTrackedEntity(Entity entity) {
+        ChunkSource manager = entity.level().getChunkSource();
+        if (!(manager instanceof ServerChunkCache cache))
+            throw new IllegalArgumentException("Only supported on server worlds!");
+        return cache.chunkMap.entityMap.get(entity.getId());
+    }
 }
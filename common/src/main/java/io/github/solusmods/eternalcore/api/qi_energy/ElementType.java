@@ -4,6 +4,7 @@ import io.github.solusmods.eternalcore.EternalCore;
 import io.github.solusmods.eternalcore.api.data.IResource;
 import io.github.solusmods.eternalcore.api.registry.ElementTypeRegistry;
 import io.github.solusmods.eternalcore.api.storage.INBTSerializable;
+import io.github.solusmods.eternalcore.impl.storage.ResourceLocationCache;
 import lombok.Getter;
 import lombok.val;
 import net.minecraft.nbt.CompoundTag;
@@ -27,8 +28,7 @@ public abstract class ElementType implements INBTSerializable<CompoundTag>, IRes
 
     @Nullable
     public static ElementType fromNBT(CompoundTag tag) {
-        val location = ResourceLocation.tryParse(tag.getString("id"));
-        val elementType = QiEnergyAPI.getElementRegistry().get(location);
+        val elementType = ResourceLocationCache.resolve(QiEnergyAPI.getElementRegistry(), tag.getString("id"));
         if (elementType != null) { elementType.deserialize(tag); }
         return elementType;
     }
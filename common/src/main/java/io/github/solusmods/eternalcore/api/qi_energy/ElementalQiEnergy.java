@@ -1,15 +1,28 @@
 package io.github.solusmods.eternalcore.api.qi_energy;
 
 import io.github.solusmods.eternalcore.api.storage.INBTSerializable;
+import io.github.solusmods.eternalcore.impl.storage.ResourceLocationCache;
 import lombok.Getter;
+import lombok.Setter;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
 import net.minecraft.resources.ResourceLocation;
 import org.jetbrains.annotations.Nullable;
 
 public class ElementalQiEnergy extends AbstractQiEnergy implements INBTSerializable<CompoundTag> {
+    /**
+     * The key of the element id in the saved data.
+     */
+    public static final String ELEMENT_KEY = "e";
+    /**
+     * The key of the element id in data saved before the compact storage format.
+     */
+    public static final String LEGACY_ELEMENT_KEY = "Element";
 
     @Getter
     private ElementType element;
+    @Getter
+    @Setter
     @Nullable
     private CompoundTag tag = null;
 
@@ -20,12 +33,14 @@ public class ElementalQiEnergy extends AbstractQiEnergy implements INBTSerializa
 
     /**
      * Creates an {@link ElementalQiEnergy} instance from a {@link CompoundTag}.
+     * Data saved before the compact format, with the element under {@link #LEGACY_ELEMENT_KEY}, is also accepted.
      *
      * @param tag The CompoundTag containing the data.
      * @return An {@link ElementalQiEnergy} instance.
      */
     public static ElementalQiEnergy fromNBT(CompoundTag tag) {
-        var element = QiEnergyAPI.getElementRegistry().get(ResourceLocation.parse(tag.getString("Element")));
+        String elementKey = tag.contains(ELEMENT_KEY, Tag.TAG_STRING) ? ELEMENT_KEY : LEGACY_ELEMENT_KEY;
+        var element = ResourceLocationCache.resolve(QiEnergyAPI.getElementRegistry(), tag.getString(elementKey));
         var qiEnergy = new ElementalQiEnergy(element, 0);
         qiEnergy.deserialize(tag);
         return qiEnergy;
@@ -34,7 +49,7 @@ public class ElementalQiEnergy extends AbstractQiEnergy implements INBTSerializa
     @Override
     public CompoundTag toNBT() {
         var nbt = new CompoundTag();
-        nbt.putString("Element", getElement().getResource().toString());
+        nbt.putString(ELEMENT_KEY, getElement().getResource().toString());
         serialize(nbt);
         return nbt;
     }
@@ -44,6 +44,14 @@ public interface QiEnergies {
 
     double getQi(ResourceLocation qiEnergyId);
 
+    /**
+     * Видаляє елемент за його ідентифікатором.
+     *
+     * @param qiEnergyId Ідентифікатор елемента
+     * @return true, якщо елемент було видалено
+     */
+    boolean removeQiEnergy(ResourceLocation qiEnergyId);
+
     /**
      * Позначає структуру як змінену.
      */
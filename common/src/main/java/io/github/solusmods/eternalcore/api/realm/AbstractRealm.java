@@ -11,6 +11,7 @@ import io.github.solusmods.eternalcore.api.stage.AbstractStage;
 import io.github.solusmods.eternalcore.api.storage.INBTSerializable;
 import io.github.solusmods.eternalcore.config.RealmConfig;
 import io.github.solusmods.eternalcore.config.RealmEntry;
+import io.github.solusmods.eternalcore.impl.storage.ResourceLocationCache;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import lombok.NoArgsConstructor;
 import lombok.val;
@@ -79,8 +80,7 @@ public abstract class AbstractRealm implements INBTSerializable<CompoundTag>, IR
     @Nullable
     public static AbstractRealm fromNBT(CompoundTag tag) {
         if (tag.contains(REALM_ID_KEY)) {
-            val id = ResourceLocation.tryParse(tag.getString(REALM_ID_KEY));
-            val abstractRealm = RealmAPI.getRealmRegistry().get(id);
+            val abstractRealm = ResourceLocationCache.resolve(RealmAPI.getRealmRegistry(), tag.getString(REALM_ID_KEY));
             if (abstractRealm != null) {
                 abstractRealm.deserialize(tag);
             }
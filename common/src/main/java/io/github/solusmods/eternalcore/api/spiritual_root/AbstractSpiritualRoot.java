@@ -10,6 +10,7 @@ import io.github.solusmods.eternalcore.api.registry.ElementTypeRegistry;
 import io.github.solusmods.eternalcore.api.registry.SpiritualRootRegistry;
 import io.github.solusmods.eternalcore.api.storage.INBTSerializable;
 import io.github.solusmods.eternalcore.config.SpiritualRootConfig;
+import io.github.solusmods.eternalcore.impl.storage.ResourceLocationCache;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -87,8 +88,7 @@ public abstract class AbstractSpiritualRoot implements INBTSerializable<Compound
      */
     @Nullable
     public static AbstractSpiritualRoot fromNBT(CompoundTag tag) {
-        val id = ResourceLocation.parse(tag.getString("Resource"));
-        val abstractSpiritualRoot = SpiritualRootRegistry.getSpiritualRootRegistry().get(id);
+        val abstractSpiritualRoot = ResourceLocationCache.resolve(SpiritualRootRegistry.getSpiritualRootRegistry(), tag.getString("Resource"));
         if (abstractSpiritualRoot != null) {
             abstractSpiritualRoot.deserialize(tag);
         }
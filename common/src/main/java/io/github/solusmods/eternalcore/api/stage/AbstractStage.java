@@ -9,6 +9,7 @@ import io.github.solusmods.eternalcore.api.registry.StageRegistry;
 import io.github.solusmods.eternalcore.api.spiritual_root.AbstractSpiritualRoot;
 import io.github.solusmods.eternalcore.api.storage.INBTSerializable;
 import io.github.solusmods.eternalcore.config.StageConfig;
+import io.github.solusmods.eternalcore.impl.storage.ResourceLocationCache;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.val;
@@ -91,8 +92,7 @@ public abstract class AbstractStage implements IResource, INBTSerializable<Compo
     @Nullable
     public static AbstractStage fromNBT(CompoundTag tag) {
         if (tag.contains("Id")) {
-            val id = ResourceLocation.tryParse(tag.getString("Id"));
-            val abstractStage = StageAPI.getStageRegistry().get(id);
+            val abstractStage = ResourceLocationCache.resolve(StageAPI.getStageRegistry(), tag.getString("Id"));
             if (abstractStage != null) {
                 abstractStage.deserialize(tag);
             }
@@ -1,16 +1,38 @@
 package io.github.solusmods.eternalcore.api.storage;
 
+import io.github.solusmods.eternalcore.impl.storage.CombinedStorage;
 import lombok.Getter;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
 
 public abstract class AbstractStorage {
-    protected final StorageHolder holder;
+    protected StorageHolder holder;
     /**
      * -- GETTER --
      * Used to check if the storage is dirty.
+     * New and loaded storages start clean, only {@link #markDirty()} marks them as changed.
      */
     @Getter
-    public boolean dirty = true;
+    public boolean dirty = false;
+    /**
+     * The combined storage this storage is attached to, notified about dirty state changes.
+     */
+    @Nullable
+    private CombinedStorage owner = null;
+    /**
+     * The slot of this storage in its owning combined storage.
+     */
+    private int slot = -1;
+    /**
+     * -- GETTER --
+     * Used to check if the storage changed since it was last saved.
+     * Unlike the dirty flag, this is never reset by network synchronization.
+     */
+    @Getter
+    private int persistGeneration = 0;
 
     protected AbstractStorage(StorageHolder holder) {
         this.holder = holder;
@@ -33,6 +55,56 @@ public abstract class AbstractStorage {
      */
     public abstract void load(CompoundTag data);
 
+    /**
+     * Used to convert data saved in the first storage format before it is loaded.
+     * Called with a copy of the saved data, before {@link #load(CompoundTag)} or {@link #loadUpdate(CompoundTag)}.
+     * Override this method to rename keys that were shortened since.
+     *
+     * @see #renameKey(CompoundTag, String, String)
+     */
+    public void upgradeLegacyData(CompoundTag data) {
+    }
+
+    /**
+     * Moves a value saved under an old key to its new key, if present.
+     */
+    protected static void renameKey(CompoundTag data, String oldKey, String newKey) {
+        Tag value = data.get(oldKey);
+        if (value == null) return;
+        data.remove(oldKey);
+        data.put(newKey, value);
+    }
+
+    /**
+     * Used to capture the current state so it can be saved on another thread.
+     * Snapshots are taken when world storage data and the chunk storage sidecar are saved.
+     * Entities are still saved through {@link #save(CompoundTag)}, since vanilla needs their data right away.
+     * The default implementation saves the state on the calling thread.
+     * Override this method to return a cheap immutable copy of the state instead,
+     * so building the NBT happens off the main thread.
+     *
+     * @see StorageSnapshot
+     */
+    public StorageSnapshot snapshot() {
+        CompoundTag saved = new CompoundTag();
+        this.save(saved);
+        // The snapshot may be written more than once and from several threads, so each write gets its own copy
+        return data -> {
+            for (String key : saved.getAllKeys()) {
+                data.put(key, saved.get(key).copy());
+            }
+        };
+    }
+
+    /**
+     * Used to check if the storage only holds the state it was created with.
+     * Holders may skip saving storages in this state, since a newly attached storage is equivalent.
+     * Override this method to allow such storages to be skipped.
+     */
+    public boolean isDefault() {
+        return false;
+    }
+
     /**
      * Used to create update packets.
      * Override this method to optimize the packet data.
@@ -52,12 +124,77 @@ public abstract class AbstractStorage {
         this.load(data);
     }
 
+    /**
+     * Used to check if this storage implements {@link #writeSync(RegistryFriendlyByteBuf)}
+     * and {@link #readSync(RegistryFriendlyByteBuf)}.
+     * Storages that return false are synchronized as NBT.
+     */
+    public boolean hasBinarySync() {
+        return false;
+    }
+
+    /**
+     * Used to write the full state into a sync packet.
+     * Only called if {@link #hasBinarySync()} returns true.
+     *
+     * @see #readSync(RegistryFriendlyByteBuf)
+     */
+    public void writeSync(RegistryFriendlyByteBuf buf) {
+        throw new UnsupportedOperationException(this.getClass().getName() + " does not support binary sync");
+    }
+
+    /**
+     * Used to read the full state from a sync packet.
+     * Only called if {@link #hasBinarySync()} returns true.
+     * A full sync may be applied to an existing instance, so this method must replace
+     * the whole state instead of merging into it.
+     *
+     * @see #writeSync(RegistryFriendlyByteBuf)
+     */
+    public void readSync(RegistryFriendlyByteBuf buf) {
+        throw new UnsupportedOperationException(this.getClass().getName() + " does not support binary sync");
+    }
+
+    /**
+     * Used to write update packets.
+     * Override this method to optimize the packet data.
+     *
+     * @see #readSyncUpdate(RegistryFriendlyByteBuf)
+     */
+    public void writeSyncUpdate(RegistryFriendlyByteBuf buf) {
+        this.writeSync(buf);
+    }
+
+    /**
+     * Used to apply update packets.
+     *
+     * @see #writeSyncUpdate(RegistryFriendlyByteBuf)
+     */
+    public void readSyncUpdate(RegistryFriendlyByteBuf buf) {
+        this.readSync(buf);
+    }
+
+    /**
+     * Used to move this storage to a new holder, for example when a player is cloned after death.
+     * Override this method and return true if the storage holds no state bound to the old holder.
+     * Storages that return false are copied to the new holder through NBT.
+     *
+     * @param newHolder the holder that will own this storage
+     * @return true if this storage now belongs to the new holder
+     */
+    public boolean transferTo(StorageHolder newHolder) {
+        return false;
+    }
+
     /**
      * Used to mark the storage as dirty.
-     * This will cause the storage to be synchronized.
+     * This will cause the storage to be synchronized and saved again.
+     * Storages that change without calling this method keep their previously saved data.
      */
     public void markDirty() {
         this.dirty = true;
+        this.persistGeneration++;
+        if (this.owner != null) this.owner.onStorageDirty(this.slot);
     }
 
     /**
@@ -65,5 +202,17 @@ public abstract class AbstractStorage {
      */
     public void clearDirty() {
         this.dirty = false;
+        if (this.owner != null) this.owner.onStorageClean(this.slot);
+    }
+
+    /**
+     * Used by {@link CombinedStorage} to attach this storage to one of its slots.
+     * The owner keeps an aggregated dirty state, so the dirty flag should only be changed
+     * through {@link #markDirty()} and {@link #clearDirty()}.
+     */
+    @ApiStatus.Internal
+    public void bindOwner(@Nullable CombinedStorage owner, int slot) {
+        this.owner = owner;
+        this.slot = slot;
     }
 }
@@ -26,5 +26,30 @@ public interface StorageEvents {
 
     interface StorageRegistry<T extends StorageHolder> {
         <S extends AbstractStorage> StorageKey<S> register(ResourceLocation id, Class<S> storageClass, Predicate<T> attachCheck, StorageFactory<T, S> factory);
+
+        /**
+         * Реєструє сховище з лінивим приєднанням.
+         * <p>
+         * Предикат перевіряється під час створення власника, але екземпляр сховища створюється фабрикою
+         * лише при першому зверненні до нього, при отриманні оновлення або якщо його дані знайдено у завантаженому NBT.
+         * Власники, які ніколи не звертаються до сховища, не виділяють для нього пам'ять.
+         * </p>
+         */
+        <S extends AbstractStorage> StorageKey<S> registerLazy(ResourceLocation id, Class<S> storageClass, Predicate<T> attachCheck, StorageFactory<T, S> factory);
+
+        /**
+         * Реєструє сховище з власною політикою синхронізації.
+         *
+         * @see SyncPolicy
+         */
+        <S extends AbstractStorage> StorageKey<S> register(ResourceLocation id, Class<S> storageClass, Predicate<T> attachCheck, StorageFactory<T, S> factory, SyncPolicy syncPolicy);
+
+        /**
+         * Реєструє сховище з лінивим приєднанням та власною політикою синхронізації.
+         *
+         * @see #registerLazy(ResourceLocation, Class, Predicate, StorageFactory)
+         * @see SyncPolicy
+         */
+        <S extends AbstractStorage> StorageKey<S> registerLazy(ResourceLocation id, Class<S> storageClass, Predicate<T> attachCheck, StorageFactory<T, S> factory, SyncPolicy syncPolicy);
     }
 }
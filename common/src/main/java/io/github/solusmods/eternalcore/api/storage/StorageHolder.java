@@ -9,6 +9,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * Інтерфейс для об'єктів, що можуть зберігати та управляти даними сховищ EternalCore.
@@ -180,4 +181,33 @@ public interface StorageHolder {
     default Iterable<ServerPlayer> eternalCore$getTrackingPlayers() {
         throw new AssertionError();
     }
+
+    /**
+     * Отримує гравця, якому належить цей об'єкт.
+     * <p>
+     * Власник отримує дані сховищ з видимістю {@link StorageVisibility#OWNER_ONLY}.
+     * </p>
+     *
+     * @return Гравець-власник або null, якщо об'єкт не належить гравцю
+     */
+    @Nullable
+    default ServerPlayer eternalCore$getOwningPlayer() {
+        return null;
+    }
+
+    /**
+     * Передає обробнику кожного гравця, який відстежує цей об'єкт.
+     * <p>
+     * На відміну від {@link #eternalCore$getTrackingPlayers()}, реалізації можуть обходити
+     * гравців без створення проміжних колекцій. За замовчуванням обходить результат
+     * {@link #eternalCore$getTrackingPlayers()}.
+     * </p>
+     *
+     * @param consumer Обробник гравців
+     */
+    default void eternalCore$forEachTrackingPlayer(Consumer<ServerPlayer> consumer) {
+        for (ServerPlayer player : this.eternalCore$getTrackingPlayers()) {
+            consumer.accept(player);
+        }
+    }
 }
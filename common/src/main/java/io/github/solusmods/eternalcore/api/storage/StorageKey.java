@@ -2,5 +2,33 @@ package io.github.solusmods.eternalcore.api.storage;
 
 import net.minecraft.resources.ResourceLocation;
 
-public record StorageKey<T extends AbstractStorage>(ResourceLocation id, Class<T> type) {
+/**
+ * Ключ доступу до зареєстрованого сховища.
+ * <p>
+ * Окрім ідентифікатора, ключ містить тип власника та щільний індекс, який видається
+ * реєстром під час реєстрації. Індекс використовується для прямого доступу до слоту
+ * в {@link io.github.solusmods.eternalcore.impl.storage.CombinedStorage}, тоді як
+ * ідентифікатор потрібен лише для серіалізації.
+ * </p>
+ * <p>
+ * Ключі, створені конструктором {@link #StorageKey(ResourceLocation, Class)} без індексу, залишені для
+ * сумісності: сховище за ними шукається за ідентифікатором, що повільніше. Слід використовувати ключі,
+ * які повертає реєстр.
+ * </p>
+ *
+ * @param id          Ідентифікатор сховища
+ * @param type        Клас сховища
+ * @param storageType Тип власника, для якого зареєстровано сховище
+ * @param index       Порядковий індекс сховища в межах свого {@link StorageType}
+ */
+public record StorageKey<T extends AbstractStorage>(ResourceLocation id, Class<T> type, StorageType storageType, int index) {
+    /**
+     * Створює ключ без індексу, сховище за яким шукається за ідентифікатором.
+     *
+     * @param id   Ідентифікатор сховища
+     * @param type Клас сховища
+     */
+    public StorageKey(ResourceLocation id, Class<T> type) {
+        this(id, type, null, -1);
+    }
 }
@@ -0,0 +1,20 @@
+package io.github.solusmods.eternalcore.api.storage;
+
+import net.minecraft.nbt.CompoundTag;
+
+/**
+ * Знімок стану сховища, який можна зберегти в NBT на іншому потоці.
+ * <p>
+ * Створюється методом {@link AbstractStorage#snapshot()} на основному потоці. Знімок не повинен
+ * звертатися до самого сховища, оскільки воно може змінюватися під час збереження.
+ * </p>
+ */
+@FunctionalInterface
+public interface StorageSnapshot {
+    /**
+     * Записує збережений стан у тег так само, як {@link AbstractStorage#save(CompoundTag)}.
+     *
+     * @param data Тег, в який записуються дані
+     */
+    void save(CompoundTag data);
+}
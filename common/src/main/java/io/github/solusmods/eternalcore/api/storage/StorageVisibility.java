@@ -0,0 +1,28 @@
+package io.github.solusmods.eternalcore.api.storage;
+
+/**
+ * Коло гравців, яким надсилаються дані сховища.
+ * <p>
+ * Задається для кожного зареєстрованого сховища через {@link SyncPolicy#visibility()}.
+ * Власником вважається гравець, якому належить сховище, тобто сам {@link net.minecraft.server.level.ServerPlayer}
+ * для сховищ сутностей. У чанків та світів власника немає.
+ * </p>
+ */
+public enum StorageVisibility {
+    /**
+     * Дані отримує лише власник
+     */
+    OWNER_ONLY,
+    /**
+     * Дані отримують власник та всі гравці, що відстежують власника сховища
+     */
+    TRACKING,
+    /**
+     * Дані отримують усі гравці у вимірі власника сховища
+     */
+    DIMENSION,
+    /**
+     * Дані не надсилаються клієнтам
+     */
+    SERVER_ONLY
+}
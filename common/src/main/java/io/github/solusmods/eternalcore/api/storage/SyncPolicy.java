@@ -0,0 +1,106 @@
+package io.github.solusmods.eternalcore.api.storage;
+
+import lombok.NonNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.Predicate;
+
+/**
+ * Політика синхронізації зареєстрованого сховища.
+ * <p>
+ * Визначає, як часто зміни сховища надсилаються клієнтам. Зміни, зроблені між синхронізаціями,
+ * не надсилаються окремо: сховище залишається "брудним" і потрапляє в одне оновлення, коли настає
+ * його час. Інтервали вимірюються у серверних тіках.
+ * </p>
+ * <p>
+ * Сховище синхронізується, якщо виконується будь-яка з умов:
+ * <ul>
+ *     <li>з моменту попередньої синхронізації минуло щонайменше {@code minInterval} тіків;</li>
+ *     <li>найстаріша несинхронізована зміна чекає щонайменше {@code maxLatency} тіків;</li>
+ *     <li>предикат {@code bypass} повідомляє про важливу зміну.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Окрім частоти, політика визначає, яким гравцям надсилаються дані сховища ({@link StorageVisibility}).
+ * </p>
+ *
+ * @param minInterval Мінімальна кількість тіків між синхронізаціями сховища
+ * @param maxLatency  Максимальна кількість тіків, протягом яких зміна може очікувати синхронізації;
+ *                    не може бути меншою за {@code minInterval}, інакше обмеження частоти не діяло б
+ * @param bypass      Предикат, що дозволяє синхронізувати важливу зміну негайно, або null
+ * @param visibility  Коло гравців, яким надсилаються дані сховища
+ */
+public record SyncPolicy(int minInterval, int maxLatency, @Nullable Predicate<AbstractStorage> bypass, @NonNull StorageVisibility visibility) {
+    /**
+     * Політика за замовчуванням: зміни синхронізуються в кінці тіку, в якому вони відбулися,
+     * з усіма гравцями, що відстежують власника
+     */
+    public static final SyncPolicy IMMEDIATE = new SyncPolicy(0, 0, null, StorageVisibility.TRACKING);
+
+    public SyncPolicy {
+        if (minInterval < 0 || maxLatency < 0) {
+            throw new IllegalArgumentException("Sync intervals must not be negative: minInterval=" + minInterval + ", maxLatency=" + maxLatency);
+        }
+        if (maxLatency < minInterval) {
+            throw new IllegalArgumentException("maxLatency must not be shorter than minInterval: minInterval=" + minInterval + ", maxLatency=" + maxLatency);
+        }
+    }
+
+    /**
+     * Створює політику, що синхронізує сховище не частіше, ніж раз на вказану кількість тіків.
+     *
+     * @param minInterval Мінімальна кількість тіків між синхронізаціями
+     * @return Нова політика синхронізації
+     */
+    public static SyncPolicy throttled(int minInterval) {
+        return new SyncPolicy(minInterval, minInterval, null, StorageVisibility.TRACKING);
+    }
+
+    /**
+     * Створює політику з обмеженням частоти та максимальною затримкою змін.
+     *
+     * @param minInterval Мінімальна кількість тіків між синхронізаціями
+     * @param maxLatency  Максимальна кількість тіків очікування зміни, не менша за {@code minInterval}
+     * @return Нова політика синхронізації
+     * @throws IllegalArgumentException якщо {@code maxLatency} менша за {@code minInterval}
+     */
+    public static SyncPolicy throttled(int minInterval, int maxLatency) {
+        return new SyncPolicy(minInterval, maxLatency, null, StorageVisibility.TRACKING);
+    }
+
+    /**
+     * Повертає копію політики з предикатом важливих змін.
+     *
+     * @param bypass Предикат, що повертає true, якщо зміни сховища потрібно надіслати негайно
+     * @return Нова політика синхронізації
+     */
+    public SyncPolicy withBypass(Predicate<AbstractStorage> bypass) {
+        return new SyncPolicy(this.minInterval, this.maxLatency, bypass, this.visibility);
+    }
+
+    /**
+     * Повертає копію політики з іншим колом отримувачів.
+     *
+     * @param visibility Коло гравців, яким надсилаються дані сховища
+     * @return Нова політика синхронізації
+     */
+    public SyncPolicy withVisibility(StorageVisibility visibility) {
+        return new SyncPolicy(this.minInterval, this.maxLatency, this.bypass, visibility);
+    }
+
+    /**
+     * Перевіряє, чи настав час синхронізувати змінене сховище.
+     *
+     * @param storage    Змінене сховище
+     * @param dirtySince Тік найстарішої несинхронізованої зміни
+     * @param lastSync   Тік попередньої синхронізації або {@link Integer#MIN_VALUE}, якщо її не було
+     * @param tick       Поточний тік
+     * @return true, якщо сховище потрібно синхронізувати зараз
+     */
+    public boolean isDue(AbstractStorage storage, int dirtySince, int lastSync, int tick) {
+        if (this.minInterval == 0) return true;
+        if ((long) tick - lastSync >= this.minInterval) return true;
+        if ((long) tick - dirtySince >= this.maxLatency) return true;
+        return this.bypass != null && this.bypass.test(storage);
+    }
+}
@@ -2,6 +2,7 @@ package io.github.solusmods.eternalcore.impl.qi_energy;
 
 import io.github.solusmods.eternalcore.EternalCore;
 import io.github.solusmods.eternalcore.api.qi_energy.AbstractQiEnergy;
+import io.github.solusmods.eternalcore.api.qi_energy.ElementType;
 import io.github.solusmods.eternalcore.api.qi_energy.ElementalQiEnergy;
 import io.github.solusmods.eternalcore.api.qi_energy.QiEnergies;
 import io.github.solusmods.eternalcore.api.qi_energy.QiEnergyAPI;
@@ -9,17 +10,25 @@ import io.github.solusmods.eternalcore.api.storage.AbstractStorage;
 import io.github.solusmods.eternalcore.api.storage.StorageEvents;
 import io.github.solusmods.eternalcore.api.storage.StorageHolder;
 import io.github.solusmods.eternalcore.api.storage.StorageKey;
+import io.github.solusmods.eternalcore.api.storage.StorageSnapshot;
+import io.github.solusmods.eternalcore.api.storage.StorageVisibility;
+import io.github.solusmods.eternalcore.api.storage.SyncPolicy;
+import io.github.solusmods.eternalcore.impl.storage.ResourceLocationCache;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.StringTag;
 import net.minecraft.nbt.Tag;
+import net.minecraft.network.RegistryFriendlyByteBuf;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.LivingEntity;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.BiConsumer;
 
 /**
@@ -32,9 +41,16 @@ import java.util.function.BiConsumer;
  * </p>
  * <p>
  * Метод {@link #saveOutdated(CompoundTag)} застосовується під час часткової синхронізації з клієнтами:
- * якщо енергію видалено, сховище надсилає прапорець <code>resetExistingData</code>, і клієнт повинен
+ * сховище відстежує ідентифікатори змінених та видалених енергій і надсилає лише їх. Якщо внутрішню
+ * мапу було змінено напряму з подальшим викликом {@link #markDirty()}, зміни не можна відстежити,
+ * тому сховище надсилає прапорець <code>resetExistingData</code> з повним станом, і клієнт повинен
  * очистити локальний стан перед застосуванням нових значень.
  * </p>
+ * <p>
+ * Для синхронізації використовується бінарний формат ({@link #writeSync(RegistryFriendlyByteBuf)}):
+ * кількість енергій, а для кожної — числовий ідентифікатор елемента у синхронізованому реєстрі,
+ * кількість та необов'язковий додатковий тег.
+ * </p>
  */
 public class QiEnergyStorage extends AbstractStorage implements QiEnergies {
     /**
@@ -44,7 +60,11 @@ public class QiEnergyStorage extends AbstractStorage implements QiEnergies {
     /**
      * Ключ для зберігання колекції елементів у NBT.
      */
-    private static final String QI_ENERGIES_KEY = "qi_energies_key";
+    private static final String QI_ENERGIES_KEY = "q";
+    /**
+     * Ключ для списку видалених енергій у частковому оновленні.
+     */
+    private static final String REMOVED_QI_ENERGIES_KEY = "rq";
     /**
      * Ключ для доступу до цього сховища.
      */
@@ -54,7 +74,18 @@ public class QiEnergyStorage extends AbstractStorage implements QiEnergies {
      * Колекція енергій, якими володіє сутність.
      */
     private final Map<ResourceLocation, ElementalQiEnergy> ElementalQiEnergies = new HashMap<>();
-    private boolean hasRemovedElements = false;
+    /**
+     * Ідентифікатори енергій, змінених з моменту останньої часткової синхронізації.
+     */
+    private final Set<ResourceLocation> changedQiEnergies = new HashSet<>();
+    /**
+     * Ідентифікатори енергій, видалених з моменту останньої часткової синхронізації.
+     */
+    private final Set<ResourceLocation> removedQiEnergies = new HashSet<>();
+    /**
+     * Чи потрібно надіслати повний стан, оскільки зміни не вдалося відстежити.
+     */
+    private boolean fullUpdateRequired = false;
 
     /**
      * Створює нове сховище елементів для вказаного власника.
@@ -73,9 +104,13 @@ public class QiEnergyStorage extends AbstractStorage implements QiEnergies {
      */
     public static void init() {
         StorageEvents.REGISTER_ENTITY_STORAGE.register(registry ->
-                key = registry.register(ID,
+                key = registry.registerLazy(ID,
                         QiEnergyStorage.class, Entity.class::isInstance,
-                        QiEnergyStorage::new));
+                        QiEnergyStorage::new,
+                        // Qi changes every tick while cultivating, removals are sent right away
+                        SyncPolicy.throttled(5)
+                                .withBypass(storage -> ((QiEnergyStorage) storage).hasStructuralChanges())
+                                .withVisibility(StorageVisibility.OWNER_ONLY)));
     }
 
     /**
@@ -127,7 +162,7 @@ public class QiEnergyStorage extends AbstractStorage implements QiEnergies {
         double before = qiEnergy.getAmount();
         qiEnergy.add(amount);
         if (Double.compare(before, qiEnergy.getAmount()) != 0) {
-            markDirty();
+            markChanged(qiEnergyId);
         }
     }
 
@@ -142,17 +177,13 @@ public class QiEnergyStorage extends AbstractStorage implements QiEnergies {
      */
     @Override
     public void forEachQiEnergy(BiConsumer<QiEnergyStorage, ElementalQiEnergy> action) {
-        boolean mutated = false;
         for (ElementalQiEnergy element : List.copyOf(getElementalQiEnergies().values())) {
             double before = element.getAmount();
             action.accept(this, element);
-            if (!mutated && Double.compare(before, element.getAmount()) != 0) {
-                mutated = true;
+            if (Double.compare(before, element.getAmount()) != 0) {
+                markChanged(element.getElement().getResource());
             }
         }
-        if (mutated) {
-            markDirty();
-        }
     }
 
     /**
@@ -169,10 +200,58 @@ public class QiEnergyStorage extends AbstractStorage implements QiEnergies {
         double before = qiEnergy.getAmount();
         qiEnergy.subtract(amount);
         if (Double.compare(before, qiEnergy.getAmount()) != 0) {
-            markDirty();
+            markChanged(qiEnergyId);
         }
     }
 
+    /**
+     * Видаляє енергію Ці зі сховища.
+     *
+     * @param qiEnergyId Ідентифікатор енергії Ці
+     * @return true, якщо енергію було видалено
+     */
+    @Override
+    public boolean removeQiEnergy(ResourceLocation qiEnergyId) {
+        if (this.ElementalQiEnergies.remove(qiEnergyId) == null) return false;
+        this.changedQiEnergies.remove(qiEnergyId);
+        this.removedQiEnergies.add(qiEnergyId);
+        super.markDirty();
+        return true;
+    }
+
+    /**
+     * Позначає сховище як змінене без відомостей про те, які енергії змінилися.
+     * <p>
+     * Наступне часткове оновлення міститиме повний стан із прапорцем <code>resetExistingData</code>.
+     * </p>
+     */
+    @Override
+    public void markDirty() {
+        this.fullUpdateRequired = true;
+        super.markDirty();
+    }
+
+    /**
+     * Позначає енергію як змінену для наступного часткового оновлення.
+     *
+     * @param qiEnergyId Ідентифікатор зміненої енергії
+     */
+    private void markChanged(ResourceLocation qiEnergyId) {
+        this.removedQiEnergies.remove(qiEnergyId);
+        this.changedQiEnergies.add(qiEnergyId);
+        super.markDirty();
+    }
+
+    /**
+     * Перевіряє, чи містять несинхронізовані зміни видалення енергій або повний стан.
+     * Такі зміни надсилаються клієнтам без очікування інтервалу синхронізації.
+     *
+     * @return true, якщо зміни не обмежуються кількістю енергії
+     */
+    public boolean hasStructuralChanges() {
+        return this.fullUpdateRequired || !this.removedQiEnergies.isEmpty();
+    }
+
     /**
      * Повертає кількість певної енергії Ці, доступної у сховищі.
      *
@@ -203,7 +282,7 @@ public class QiEnergyStorage extends AbstractStorage implements QiEnergies {
 
         qiEnergy = new ElementalQiEnergy(elementType, 0);
         this.ElementalQiEnergies.put(qiEnergyId, qiEnergy);
-        markDirty();
+        markChanged(qiEnergyId);
         return qiEnergy;
     }
 
@@ -246,18 +325,53 @@ public class QiEnergyStorage extends AbstractStorage implements QiEnergies {
      */
     @Override
     public void save(CompoundTag data) {
+        save(data, ElementalQiEnergies.values());
+    }
+
+    /**
+     * Фіксує копії всіх енергій Ці: їхні стихії, обсяги та додаткові теги.
+     * NBT будується з копій пізніше, на потоці збереження.
+     *
+     * @return Незмінний знімок стану сховища
+     */
+    @Override
+    public StorageSnapshot snapshot() {
+        List<ElementalQiEnergy> qiEnergies = ElementalQiEnergies.values().stream().map(instance -> {
+            ElementalQiEnergy copy = new ElementalQiEnergy(instance.getElement(), instance.getAmount());
+            if (instance.getTag() != null) copy.setTag(instance.getTag().copy());
+            return copy;
+        }).toList();
+        return data -> save(data, qiEnergies);
+    }
+
+    private static void save(CompoundTag data, Collection<ElementalQiEnergy> qiEnergies) {
         ListTag qiEnergyTag = new ListTag();
-        ElementalQiEnergies.values().forEach(instance -> {
+        qiEnergies.forEach(instance -> {
             qiEnergyTag.add(instance.toNBT());
         });
         data.put(QI_ENERGIES_KEY, qiEnergyTag);
     }
 
+    /**
+     * Перейменовує ключі даних, збережених у першому форматі сховищ, зокрема ключ стихії кожної енергії.
+     *
+     * @param data Копія збережених даних
+     */
+    @Override
+    public void upgradeLegacyData(CompoundTag data) {
+        renameKey(data, "qi_energies_key", QI_ENERGIES_KEY);
+        renameKey(data, "removed_qi_energies_key", REMOVED_QI_ENERGIES_KEY);
+        for (Tag tag : data.getList(QI_ENERGIES_KEY, Tag.TAG_COMPOUND)) {
+            renameKey((CompoundTag) tag, ElementalQiEnergy.LEGACY_ELEMENT_KEY, ElementalQiEnergy.ELEMENT_KEY);
+        }
+    }
+
     /**
      * Завантажує стан сховища з NBT.
      * <p>
      * Під час завантаження попередні дані можуть бути скинуті, якщо присутній ключ
-     * <code>resetExistingData</code>, що використовується для синхронізації клієнтів.
+     * <code>resetExistingData</code>, а енергії зі списку видалених вилучаються.
+     * Обидва ключі використовуються лише для синхронізації клієнтів.
      * </p>
      *
      * @param data Тег, з якого будуть завантажені дані
@@ -267,6 +381,10 @@ public class QiEnergyStorage extends AbstractStorage implements QiEnergies {
         if (data.contains("resetExistingData")) {
             this.ElementalQiEnergies.clear();
         }
+        for (Tag tag : data.getList(REMOVED_QI_ENERGIES_KEY, Tag.TAG_STRING)) {
+            ResourceLocation qiEnergyId = ResourceLocationCache.parse(tag.getAsString());
+            if (qiEnergyId != null) this.ElementalQiEnergies.remove(qiEnergyId);
+        }
         for (Tag tag : data.getList(QI_ENERGIES_KEY, Tag.TAG_COMPOUND)) {
             try {
                 ElementalQiEnergy instance = ElementalQiEnergy.fromNBT((CompoundTag) tag);
@@ -278,6 +396,21 @@ public class QiEnergyStorage extends AbstractStorage implements QiEnergies {
         }
     }
 
+    /**
+     * Переносить сховище до нового власника без копіювання даних.
+     * <p>
+     * Сховище не містить стану, прив'язаного до попереднього власника, тому достатньо змінити власника.
+     * </p>
+     *
+     * @param newHolder Новий власник сховища
+     * @return Завжди true
+     */
+    @Override
+    public boolean transferTo(StorageHolder newHolder) {
+        this.holder = newHolder;
+        return true;
+    }
+
     /**
      * Отримує власника сховища як живу сутність.
      *
@@ -290,24 +423,140 @@ public class QiEnergyStorage extends AbstractStorage implements QiEnergies {
     /**
      * Виконує часткову синхронізацію сховища.
      * <p>
-     * Якщо будь-яку енергію було видалено, сховище ставить прапорець <code>resetExistingData</code>
-     * і делегує серіалізацію батьківському класу. В іншому випадку відправляється лише оновлений список.
+     * Надсилаються лише енергії, змінені з моменту попередньої синхронізації, та список видалених енергій.
+     * Якщо зміни не вдалося відстежити, сховище ставить прапорець <code>resetExistingData</code>
+     * і делегує серіалізацію батьківському класу.
      * </p>
      *
      * @param data Тег для запису
      */
     @Override
     public void saveOutdated(CompoundTag data) {
-        if (this.hasRemovedElements) {
-            this.hasRemovedElements = false;
+        if (this.fullUpdateRequired) {
+            this.clearTrackedChanges();
             data.putBoolean("resetExistingData", true);
             super.saveOutdated(data);
-        } else {
-            ListTag elementsTag = new ListTag();
-            for (ElementalQiEnergy instance : this.ElementalQiEnergies.values()) {
-                elementsTag.add(instance.toNBT());
+            return;
+        }
+        ListTag elementsTag = new ListTag();
+        for (ResourceLocation qiEnergyId : this.changedQiEnergies) {
+            ElementalQiEnergy instance = this.ElementalQiEnergies.get(qiEnergyId);
+            if (instance != null) elementsTag.add(instance.toNBT());
+        }
+        data.put(QI_ENERGIES_KEY, elementsTag);
+        if (!this.removedQiEnergies.isEmpty()) {
+            ListTag removedTag = new ListTag();
+            for (ResourceLocation qiEnergyId : this.removedQiEnergies) {
+                removedTag.add(StringTag.valueOf(qiEnergyId.toString()));
+            }
+            data.put(REMOVED_QI_ENERGIES_KEY, removedTag);
+        }
+        this.clearTrackedChanges();
+    }
+
+    private void clearTrackedChanges() {
+        this.fullUpdateRequired = false;
+        this.changedQiEnergies.clear();
+        this.removedQiEnergies.clear();
+    }
+
+    @Override
+    public boolean hasBinarySync() {
+        return true;
+    }
+
+    /**
+     * Записує всі енергії у бінарний пакет синхронізації.
+     *
+     * @param buf Буфер пакету
+     */
+    @Override
+    public void writeSync(RegistryFriendlyByteBuf buf) {
+        buf.writeVarInt(this.ElementalQiEnergies.size());
+        for (ElementalQiEnergy instance : this.ElementalQiEnergies.values()) {
+            writeQiEnergy(buf, instance);
+        }
+    }
+
+    /**
+     * Замінює всі енергії даними з бінарного пакету синхронізації.
+     *
+     * @param buf Буфер пакету
+     */
+    @Override
+    public void readSync(RegistryFriendlyByteBuf buf) {
+        this.ElementalQiEnergies.clear();
+        this.readQiEnergies(buf, buf.readVarInt());
+    }
+
+    /**
+     * Записує часткове оновлення у бінарний пакет.
+     * <p>
+     * Перший байт повідомляє, чи містить пакет повний стан, який замінює поточний стан клієнта,
+     * як і <code>resetExistingData</code> у {@link #saveOutdated(CompoundTag)}. Інакше пакет містить
+     * видалені ідентифікатори та змінені енергії.
+     * </p>
+     *
+     * @param buf Буфер пакету
+     */
+    @Override
+    public void writeSyncUpdate(RegistryFriendlyByteBuf buf) {
+        buf.writeBoolean(this.fullUpdateRequired);
+        if (this.fullUpdateRequired) {
+            this.writeSync(buf);
+            this.clearTrackedChanges();
+            return;
+        }
+        buf.writeVarInt(this.removedQiEnergies.size());
+        // Removed elements may no longer be registered, so they are sent by id instead of raw id
+        for (ResourceLocation qiEnergyId : this.removedQiEnergies) {
+            buf.writeResourceLocation(qiEnergyId);
+        }
+        this.changedQiEnergies.retainAll(this.ElementalQiEnergies.keySet());
+        buf.writeVarInt(this.changedQiEnergies.size());
+        for (ResourceLocation qiEnergyId : this.changedQiEnergies) {
+            writeQiEnergy(buf, this.ElementalQiEnergies.get(qiEnergyId));
+        }
+        this.clearTrackedChanges();
+    }
+
+    /**
+     * Застосовує часткове оновлення з бінарного пакету.
+     *
+     * @param buf Буфер пакету
+     */
+    @Override
+    public void readSyncUpdate(RegistryFriendlyByteBuf buf) {
+        if (buf.readBoolean()) {
+            this.readSync(buf);
+            return;
+        }
+        int removed = buf.readVarInt();
+        for (int i = 0; i < removed; i++) {
+            this.ElementalQiEnergies.remove(buf.readResourceLocation());
+        }
+        this.readQiEnergies(buf, buf.readVarInt());
+    }
+
+    private static void writeQiEnergy(RegistryFriendlyByteBuf buf, ElementalQiEnergy instance) {
+        buf.writeVarInt(QiEnergyAPI.getElementRegistry().getRawId(instance.getElement()));
+        buf.writeDouble(instance.getAmount());
+        buf.writeNbt(instance.getTag());
+    }
+
+    private void readQiEnergies(RegistryFriendlyByteBuf buf, int size) {
+        for (int i = 0; i < size; i++) {
+            int rawId = buf.readVarInt();
+            double amount = buf.readDouble();
+            CompoundTag tag = buf.readNbt();
+            ElementType element = QiEnergyAPI.getElementRegistry().byRawId(rawId);
+            if (element == null) {
+                EternalCore.LOG.warn("Received unknown qi energy with raw id {}", rawId);
+                continue;
             }
-            data.put(QI_ENERGIES_KEY, elementsTag);
+            ElementalQiEnergy instance = new ElementalQiEnergy(element, amount);
+            instance.setTag(tag);
+            this.ElementalQiEnergies.put(element.getResource(), instance);
         }
     }
 
@@ -5,15 +5,18 @@ import io.github.solusmods.eternalcore.EternalCore;
 import io.github.solusmods.eternalcore.api.network.util.Changeable;
 import io.github.solusmods.eternalcore.api.realm.AbstractRealm;
 import io.github.solusmods.eternalcore.api.realm.IReachedRealms;
+import io.github.solusmods.eternalcore.api.realm.RealmAPI;
 import io.github.solusmods.eternalcore.api.realm.RealmEvents;
 import io.github.solusmods.eternalcore.api.realm.Realms;
 import io.github.solusmods.eternalcore.api.storage.AbstractStorage;
 import io.github.solusmods.eternalcore.api.storage.StorageEvents;
 import io.github.solusmods.eternalcore.api.storage.StorageHolder;
 import io.github.solusmods.eternalcore.api.storage.StorageKey;
+import io.github.solusmods.eternalcore.api.storage.StorageSnapshot;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.Tag;
+import net.minecraft.network.RegistryFriendlyByteBuf;
 import net.minecraft.network.chat.MutableComponent;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.entity.Entity;
@@ -23,6 +26,7 @@ import org.jetbrains.annotations.Nullable;
 import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
@@ -37,6 +41,10 @@ import java.util.Set;
  * <p>
  * Клас також обробляє події зміни та досягнення світів через систему подій EternalCore.
  * </p>
+ * <p>
+ * Для мережевої синхронізації використовується бінарний формат, у якому світи передаються
+ * числовими ідентифікаторами синхронізованого реєстру світів.
+ * </p>
  */
 public class RealmStorage extends AbstractStorage implements Realms, IReachedRealms {
 
@@ -48,11 +56,11 @@ public class RealmStorage extends AbstractStorage implements Realms, IReachedRea
     /**
      * Ключ для поточного активного світу в NBT
      */
-    private static final String REALM_KEY = "realm_key";
+    private static final String REALM_KEY = "r";
     /**
      * Ключ для колекції досягнутих світів у NBT
      */
-    private static final String REACHED_REALMS_KEY = "reached_realms_key";
+    private static final String REACHED_REALMS_KEY = "rr";
     // endregion
 
     // region Static Fields
@@ -101,7 +109,7 @@ public class RealmStorage extends AbstractStorage implements Realms, IReachedRea
      */
     public static void init() {
         StorageEvents.REGISTER_ENTITY_STORAGE.register(registry ->
-                key = registry.register(ID,
+                key = registry.registerLazy(ID,
                         RealmStorage.class,
                         Entity.class::isInstance,
                         RealmStorage::new));
@@ -129,6 +137,21 @@ public class RealmStorage extends AbstractStorage implements Realms, IReachedRea
         return Optional.ofNullable(realm);
     }
 
+    /**
+     * Переносить сховище до нового власника без копіювання даних.
+     * <p>
+     * Сховище не містить стану, прив'язаного до попереднього власника, тому достатньо змінити власника.
+     * </p>
+     *
+     * @param newHolder Новий власник сховища
+     * @return Завжди true
+     */
+    @Override
+    public boolean transferTo(StorageHolder newHolder) {
+        this.holder = newHolder;
+        return true;
+    }
+
     /**
      * Отримує власника сховища як живу сутність.
      *
@@ -254,6 +277,23 @@ public class RealmStorage extends AbstractStorage implements Realms, IReachedRea
      */
     @Override
     public void save(CompoundTag data) {
+        save(data, this.realm, this.reachedRealms);
+    }
+
+    /**
+     * Фіксує поточний реалм та копію списку досягнутих реалмів.
+     * NBT будується з них пізніше, на потоці збереження.
+     *
+     * @return Незмінний знімок стану сховища
+     */
+    @Override
+    public StorageSnapshot snapshot() {
+        AbstractRealm realm = this.realm;
+        List<AbstractRealm> reachedRealms = List.copyOf(this.reachedRealms);
+        return data -> save(data, realm, reachedRealms);
+    }
+
+    private static void save(CompoundTag data, @Nullable AbstractRealm realm, Collection<AbstractRealm> reachedRealms) {
         // Save current realm
         if (realm != null) {
             data.put(REALM_KEY, realm.toNBT());
@@ -265,6 +305,17 @@ public class RealmStorage extends AbstractStorage implements Realms, IReachedRea
         data.put(REACHED_REALMS_KEY, reachedRealmsTag);
     }
 
+    /**
+     * Перейменовує ключі даних, збережених у першому форматі сховищ.
+     *
+     * @param data Копія збережених даних
+     */
+    @Override
+    public void upgradeLegacyData(CompoundTag data) {
+        renameKey(data, "realm_key", REALM_KEY);
+        renameKey(data, "reached_realms_key", REACHED_REALMS_KEY);
+    }
+
     /**
      * Завантажує стан сховища з NBT формату.
      *
@@ -352,6 +403,62 @@ public class RealmStorage extends AbstractStorage implements Realms, IReachedRea
         this.lastSyncedRealmIds.addAll(currentRealmIds);
     }
 
+    @Override
+    public boolean hasBinarySync() {
+        return true;
+    }
+
+    /**
+     * Записує поточний світ та досягнуті світи у бінарний пакет синхронізації.
+     *
+     * @param buf Буфер пакету
+     */
+    @Override
+    public void writeSync(RegistryFriendlyByteBuf buf) {
+        buf.writeBoolean(this.realm != null);
+        if (this.realm != null) writeRealm(buf, this.realm);
+        buf.writeVarInt(this.reachedRealms.size());
+        for (AbstractRealm abstractRealm : this.reachedRealms) {
+            writeRealm(buf, abstractRealm);
+        }
+    }
+
+    /**
+     * Замінює стан сховища даними з бінарного пакету синхронізації.
+     *
+     * @param buf Буфер пакету
+     */
+    @Override
+    public void readSync(RegistryFriendlyByteBuf buf) {
+        this.reachedRealms.clear();
+        this.realm = buf.readBoolean() ? readRealm(buf) : null;
+        int size = buf.readVarInt();
+        for (int i = 0; i < size; i++) {
+            AbstractRealm abstractRealm = readRealm(buf);
+            if (abstractRealm != null) this.reachedRealms.add(abstractRealm);
+        }
+    }
+
+    private static void writeRealm(RegistryFriendlyByteBuf buf, AbstractRealm abstractRealm) {
+        buf.writeVarInt(RealmAPI.getRealmRegistry().getRawId(abstractRealm));
+        CompoundTag tag = abstractRealm.serialize(new CompoundTag());
+        tag.remove(AbstractRealm.REALM_ID_KEY);
+        buf.writeNbt(tag.isEmpty() ? null : tag);
+    }
+
+    @Nullable
+    private static AbstractRealm readRealm(RegistryFriendlyByteBuf buf) {
+        int rawId = buf.readVarInt();
+        CompoundTag tag = buf.readNbt();
+        AbstractRealm abstractRealm = RealmAPI.getRealmRegistry().byRawId(rawId);
+        if (abstractRealm == null) {
+            EternalCore.LOG.error("Received unknown realm with raw id {}", rawId);
+            return null;
+        }
+        if (tag != null) abstractRealm.deserialize(tag);
+        return abstractRealm;
+    }
+
     /**
      * Повертає стислий опис стану сховища.
      *
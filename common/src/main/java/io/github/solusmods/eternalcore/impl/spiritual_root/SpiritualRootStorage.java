@@ -3,16 +3,21 @@ package io.github.solusmods.eternalcore.impl.spiritual_root;
 import io.github.solusmods.eternalcore.EternalCore;
 import io.github.solusmods.eternalcore.api.network.util.Changeable;
 import io.github.solusmods.eternalcore.api.spiritual_root.AbstractSpiritualRoot;
+import io.github.solusmods.eternalcore.api.spiritual_root.SpiritualRootAPI;
 import io.github.solusmods.eternalcore.api.spiritual_root.SpiritualRootEvents;
 import io.github.solusmods.eternalcore.api.spiritual_root.SpiritualRoots;
 import io.github.solusmods.eternalcore.api.storage.AbstractStorage;
 import io.github.solusmods.eternalcore.api.storage.StorageEvents;
 import io.github.solusmods.eternalcore.api.storage.StorageHolder;
 import io.github.solusmods.eternalcore.api.storage.StorageKey;
+import io.github.solusmods.eternalcore.api.storage.StorageSnapshot;
+import io.github.solusmods.eternalcore.api.storage.StorageVisibility;
+import io.github.solusmods.eternalcore.api.storage.SyncPolicy;
 import lombok.NonNull;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.Tag;
+import net.minecraft.network.RegistryFriendlyByteBuf;
 import net.minecraft.network.chat.MutableComponent;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.entity.Entity;
@@ -22,6 +27,7 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.BiConsumer;
 
@@ -34,6 +40,10 @@ import java.util.function.BiConsumer;
  * Під час часткових оновлень використовується прапорець <code>resetExistingData</code>, щоб
  * клієнт скинув кешовані корені, коли їх було видалено на сервері.
  * </p>
+ * <p>
+ * У бінарному форматі синхронізації корені передаються числовими ідентифікаторами синхронізованого
+ * реєстру, а кожен пакет містить повний набір коренів, тож видалення не потребують окремого прапорця.
+ * </p>
  */
 public class SpiritualRootStorage extends AbstractStorage implements SpiritualRoots {
 
@@ -44,7 +54,7 @@ public class SpiritualRootStorage extends AbstractStorage implements SpiritualRo
     /**
      * Ключ для серіалізації набору духовних коренів у NBT.
      */
-    private static final String SPIRITUAL_ROOTS_KEY = "spiritual_roots_key";
+    private static final String SPIRITUAL_ROOTS_KEY = "sr";
     /**
      * Ключ доступу до цього сховища у реєстрі.
      */
@@ -74,7 +84,8 @@ public class SpiritualRootStorage extends AbstractStorage implements SpiritualRo
      */
     public static void init() {
         StorageEvents.REGISTER_ENTITY_STORAGE.register(registry ->
-                key = registry.register(ID, SpiritualRootStorage.class, Entity.class::isInstance, SpiritualRootStorage::new));
+                key = registry.registerLazy(ID, SpiritualRootStorage.class, Entity.class::isInstance, SpiritualRootStorage::new,
+                        SyncPolicy.IMMEDIATE.withVisibility(StorageVisibility.OWNER_ONLY)));
     }
 
     /**
@@ -98,6 +109,35 @@ public class SpiritualRootStorage extends AbstractStorage implements SpiritualRo
         data.put(SPIRITUAL_ROOTS_KEY, rootsTag);
     }
 
+    /**
+     * Фіксує дані кожного кореня.
+     * <p>
+     * Екземпляри коренів спільні для всіх власників і змінюються на місці, тому на основному потоці
+     * копіюються лише їхні власні теги. Список коренів збирається пізніше, на потоці збереження.
+     * </p>
+     *
+     * @return Незмінний знімок стану сховища
+     */
+    @Override
+    public StorageSnapshot snapshot() {
+        List<CompoundTag> roots = spiritualRoots.values().stream().map(AbstractSpiritualRoot::toNBT).toList();
+        return data -> {
+            ListTag rootsTag = new ListTag();
+            roots.forEach(root -> rootsTag.add(root.copy()));
+            data.put(SPIRITUAL_ROOTS_KEY, rootsTag);
+        };
+    }
+
+    /**
+     * Перейменовує ключі даних, збережених у першому форматі сховищ.
+     *
+     * @param data Копія збережених даних
+     */
+    @Override
+    public void upgradeLegacyData(CompoundTag data) {
+        renameKey(data, "spiritual_roots_key", SPIRITUAL_ROOTS_KEY);
+    }
+
     /**
      * Відновлює стан сховища з NBT.
      * <p>
@@ -155,6 +195,63 @@ public class SpiritualRootStorage extends AbstractStorage implements SpiritualRo
         }
     }
 
+    @Override
+    public boolean hasBinarySync() {
+        return true;
+    }
+
+    /**
+     * Записує всі духовні корені у бінарний пакет синхронізації.
+     *
+     * @param buf Буфер пакету
+     */
+    @Override
+    public void writeSync(RegistryFriendlyByteBuf buf) {
+        this.hasRemovedRoots = false;
+        buf.writeVarInt(this.spiritualRoots.size());
+        for (AbstractSpiritualRoot root : this.spiritualRoots.values()) {
+            buf.writeVarInt(SpiritualRootAPI.getSpiritualRootRegistry().getRawId(root));
+            buf.writeNbt(root.serialize(new CompoundTag()));
+        }
+    }
+
+    /**
+     * Замінює всі духовні корені даними з бінарного пакету синхронізації.
+     *
+     * @param buf Буфер пакету
+     */
+    @Override
+    public void readSync(RegistryFriendlyByteBuf buf) {
+        this.spiritualRoots.clear();
+        int size = buf.readVarInt();
+        for (int i = 0; i < size; i++) {
+            int rawId = buf.readVarInt();
+            CompoundTag tag = buf.readNbt();
+            AbstractSpiritualRoot root = SpiritualRootAPI.getSpiritualRootRegistry().byRawId(rawId);
+            if (root == null) {
+                EternalCore.LOG.error("Received unknown spiritual root with raw id {}", rawId);
+                continue;
+            }
+            if (tag != null) root.deserialize(tag);
+            this.spiritualRoots.put(root.getResource(), root);
+        }
+    }
+
+    /**
+     * Переносить сховище до нового власника без копіювання даних.
+     * <p>
+     * Сховище не містить стану, прив'язаного до попереднього власника, тому достатньо змінити власника.
+     * </p>
+     *
+     * @param newHolder Новий власник сховища
+     * @return Завжди true
+     */
+    @Override
+    public boolean transferTo(StorageHolder newHolder) {
+        this.holder = newHolder;
+        return true;
+    }
+
     /**
      * Отримує власника сховища як живу сутність.
      *
@@ -8,9 +8,13 @@ import io.github.solusmods.eternalcore.api.storage.AbstractStorage;
 import io.github.solusmods.eternalcore.api.storage.StorageEvents;
 import io.github.solusmods.eternalcore.api.storage.StorageHolder;
 import io.github.solusmods.eternalcore.api.storage.StorageKey;
+import io.github.solusmods.eternalcore.api.storage.StorageSnapshot;
+import io.github.solusmods.eternalcore.api.storage.StorageVisibility;
+import io.github.solusmods.eternalcore.api.storage.SyncPolicy;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.Tag;
+import net.minecraft.network.RegistryFriendlyByteBuf;
 import net.minecraft.network.chat.MutableComponent;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.world.entity.Entity;
@@ -31,6 +35,10 @@ import java.util.Optional;
  * результат операції. Часткові синхронізації використовують прапорець <code>resetExistingData</code>,
  * коли список досягнутих стадій очищено.
  * </p>
+ * <p>
+ * Для мережевої синхронізації використовується бінарний формат, у якому стадії передаються
+ * числовими ідентифікаторами синхронізованого реєстру стадій.
+ * </p>
  */
 public class StageStorage extends AbstractStorage implements Stages, IReachedStages {
 
@@ -41,11 +49,11 @@ public class StageStorage extends AbstractStorage implements Stages, IReachedSta
     /**
      * Ключ для серіалізації поточної стадії.
      */
-    private static final String STAGE_KEY = "stage_key";
+    private static final String STAGE_KEY = "s";
     /**
      * Ключ для серіалізації набору досягнутих стадій.
      */
-    private static final String REACHED_STAGES_KEY = "reached_stages_key";
+    private static final String REACHED_STAGES_KEY = "rs";
     /**
      * Ключ доступу до цього сховища.
      */
@@ -73,9 +81,10 @@ public class StageStorage extends AbstractStorage implements Stages, IReachedSta
      */
     public static void init() {
         StorageEvents.REGISTER_ENTITY_STORAGE.register(registry ->
-                key = registry.register(ID,
+                key = registry.registerLazy(ID,
                         StageStorage.class, Entity.class::isInstance,
-                        StageStorage::new));
+                        StageStorage::new,
+                        SyncPolicy.IMMEDIATE.withVisibility(StorageVisibility.OWNER_ONLY)));
     }
 
     /**
@@ -173,16 +182,44 @@ public class StageStorage extends AbstractStorage implements Stages, IReachedSta
      */
     @Override
     public void save(CompoundTag data) {
+        save(data, this.stage, this.reachedStages);
+    }
+
+    /**
+     * Фіксує поточну стадію та копію списку досягнутих стадій.
+     * NBT будується з них пізніше, на потоці збереження.
+     *
+     * @return Незмінний знімок стану сховища
+     */
+    @Override
+    public StorageSnapshot snapshot() {
+        AbstractStage stage = this.stage;
+        List<AbstractStage> reachedStages = List.copyOf(this.reachedStages);
+        return data -> save(data, stage, reachedStages);
+    }
+
+    private static void save(CompoundTag data, @Nullable AbstractStage stage, List<AbstractStage> reachedStages) {
         if (stage != null) {
             data.put(STAGE_KEY, stage.toNBT());
         }
         ListTag reachedStagesTag = new ListTag();
-        for (AbstractStage stage : reachedStages) {
-            reachedStagesTag.add(stage.toNBT());
+        for (AbstractStage reachedStage : reachedStages) {
+            reachedStagesTag.add(reachedStage.toNBT());
         }
         data.put(REACHED_STAGES_KEY, reachedStagesTag);
     }
 
+    /**
+     * Перейменовує ключі даних, збережених у першому форматі сховищ.
+     *
+     * @param data Копія збережених даних
+     */
+    @Override
+    public void upgradeLegacyData(CompoundTag data) {
+        renameKey(data, "stage_key", STAGE_KEY);
+        renameKey(data, "reached_stages_key", REACHED_STAGES_KEY);
+    }
+
     /**
      * Завантажує стан сховища з NBT.
      *
@@ -211,6 +248,61 @@ public class StageStorage extends AbstractStorage implements Stages, IReachedSta
         }
     }
 
+    @Override
+    public boolean hasBinarySync() {
+        return true;
+    }
+
+    /**
+     * Записує поточну стадію та досягнуті стадії у бінарний пакет синхронізації.
+     *
+     * @param buf Буфер пакету
+     */
+    @Override
+    public void writeSync(RegistryFriendlyByteBuf buf) {
+        buf.writeBoolean(this.stage != null);
+        if (this.stage != null) writeStage(buf, this.stage);
+        buf.writeVarInt(this.reachedStages.size());
+        for (AbstractStage reachedStage : this.reachedStages) {
+            writeStage(buf, reachedStage);
+        }
+    }
+
+    /**
+     * Замінює стан сховища даними з бінарного пакету синхронізації.
+     *
+     * @param buf Буфер пакету
+     */
+    @Override
+    public void readSync(RegistryFriendlyByteBuf buf) {
+        this.reachedStages.clear();
+        this.stage = buf.readBoolean() ? readStage(buf) : null;
+        int size = buf.readVarInt();
+        for (int i = 0; i < size; i++) {
+            AbstractStage reachedStage = readStage(buf);
+            if (reachedStage != null) this.reachedStages.add(reachedStage);
+        }
+    }
+
+    private static void writeStage(RegistryFriendlyByteBuf buf, AbstractStage stage) {
+        buf.writeVarInt(StageAPI.getStageRegistry().getRawId(stage));
+        CompoundTag tag = stage.serialize(new CompoundTag());
+        buf.writeNbt(tag.isEmpty() ? null : tag);
+    }
+
+    @Nullable
+    private static AbstractStage readStage(RegistryFriendlyByteBuf buf) {
+        int rawId = buf.readVarInt();
+        CompoundTag tag = buf.readNbt();
+        AbstractStage stage = StageAPI.getStageRegistry().byRawId(rawId);
+        if (stage == null) {
+            EternalCore.LOG.error("Received unknown stage with raw id {}", rawId);
+            return null;
+        }
+        if (tag != null) stage.deserialize(tag);
+        return stage;
+    }
+
     /**
      * Перевіряє, чи стадію вже було досягнуто.
      *
@@ -226,6 +318,21 @@ public class StageStorage extends AbstractStorage implements Stages, IReachedSta
         return false;
     }
 
+    /**
+     * Переносить сховище до нового власника без копіювання даних.
+     * <p>
+     * Сховище не містить стану, прив'язаного до попереднього власника, тому достатньо змінити власника.
+     * </p>
+     *
+     * @param newHolder Новий власник сховища
+     * @return Завжди true
+     */
+    @Override
+    public boolean transferTo(StorageHolder newHolder) {
+        this.holder = newHolder;
+        return true;
+    }
+
     /**
      * Повертає власника сховища як живу сутність.
      *
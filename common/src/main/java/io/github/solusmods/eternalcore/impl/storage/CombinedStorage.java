@@ -4,14 +4,29 @@ package io.github.solusmods.eternalcore.impl.storage;
 import io.github.solusmods.eternalcore.EternalCore;
 import io.github.solusmods.eternalcore.api.storage.AbstractStorage;
 import io.github.solusmods.eternalcore.api.storage.StorageHolder;
+import io.netty.buffer.Unpooled;
+import net.minecraft.core.RegistryAccess;
 import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.Tag;
+import io.github.solusmods.eternalcore.api.storage.StorageKey;
+import io.github.solusmods.eternalcore.api.storage.StorageSnapshot;
+import io.github.solusmods.eternalcore.api.storage.StorageType;
+import io.github.solusmods.eternalcore.api.storage.StorageVisibility;
+import io.github.solusmods.eternalcore.api.storage.SyncPolicy;
+import io.github.solusmods.eternalcore.impl.storage.sidecar.ChunkStorageSidecar;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.RegistryFriendlyByteBuf;
 import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.chunk.LevelChunk;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 
 /**
  * Комбіноване сховище, яке містить і керує кількома окремими сховищами ({@link AbstractStorage}).
@@ -21,28 +36,143 @@ import java.util.Map;
  * {@link ResourceLocation} ідентифікаторами, і забезпечує єдиний інтерфейс
  * для збереження/завантаження всіх сховищ одночасно.
  * </p>
+ * <p>
+ * Сховища зберігаються у масиві за індексом {@link StorageKey#index()}, тому доступ через
+ * {@link #get(StorageKey)} не потребує хешування. Ідентифікатори використовуються лише
+ * під час серіалізації.
+ * </p>
+ * <p>
+ * Пакети синхронізації мають бінарний формат: кожен запис містить індекс сховища у вигляді varint,
+ * довжину та дані. Сховища з {@link AbstractStorage#hasBinarySync()} записують себе напряму,
+ * решта передається як NBT. На клієнті індекси перетворюються на локальні через {@link StoragePalette}.
+ * </p>
+ * <p>
+ * Сховища чанків, що завантажуються на робочих потоках, створюються відокремленими ({@link #detach()}).
+ * Таке сховище належить потоку завантаження: той створює та заповнює його, але не додає до черги
+ * синхронізації і не звертається до стану сервера. Основний потік отримує сховище лише
+ * через {@link #publish()}, який викликається при переході чанка у стан завантаженого.
+ * Передача чанка на основний потік через його future гарантує видимість усіх записів
+ * потоку завантаження, тож додаткова синхронізація не потрібна.
+ * </p>
+ * <p>
+ * У NBT сховища записуються у форматі версії 2: тег кожного сховища зберігається
+ * у спільному CompoundTag під ідентифікатором сховища, без окремого ключа ідентифікатора у кожному записі.
+ * Дані першої версії (список записів з довгими ключами) читаються й надалі: перед завантаженням
+ * вони проходять через {@link AbstractStorage#upgradeLegacyData(CompoundTag)}, а при наступному
+ * збереженні записуються у новому форматі.
+ * </p>
  */
 public class CombinedStorage {
     /**
-     * Ключ для списку сховищ у NBT даних
+     * Ключ версії формату у NBT даних
+     */
+    private static final String FORMAT_VERSION_KEY = "v";
+
+    /**
+     * Поточна версія формату NBT даних
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Ключ для тегів сховищ, записаних за їхніми ідентифікаторами, у NBT даних
      */
-    private static final String STORAGE_LIST_KEY = "eternalCore_registry_storage";
+    private static final String STORAGES_KEY = "s";
 
     /**
-     * Ключ для ідентифікатора сховища у NBT даних
+     * Ключ для списку сховищ у NBT даних першої версії
      */
-    private static final String STORAGE_ID_KEY = "eternalCore_registry_storage_id";
+    private static final String LEGACY_STORAGE_LIST_KEY = "eternalCore_registry_storage";
 
     /**
-     * Карта, що містить усі сховища, індексовані за їхніми ідентифікаторами
+     * Ключ для ідентифікатора сховища у NBT даних першої версії
      */
-    private final Map<ResourceLocation, AbstractStorage> storages = new HashMap<>();
+    private static final String LEGACY_STORAGE_ID_KEY = "eternalCore_registry_storage_id";
 
     /**
      * Власник цього комбінованого сховища
      */
     private final StorageHolder holder;
 
+    /**
+     * Тип власника, що визначає реєстр та простір індексів сховищ
+     */
+    private final StorageType storageType;
+
+    /**
+     * Реєстр сховищ для типу власника
+     */
+    private final StorageRegistryImpl<?> registry;
+
+    /**
+     * Масив сховищ, індексованих за {@link StorageKey#index()}
+     */
+    private AbstractStorage[] storages;
+
+    /**
+     * Слоти лінивих сховищ, які дозволено створити при першому зверненні
+     */
+    private final BitSet lazySlots = new BitSet();
+
+    /**
+     * Слоти сховищ, позначених як "брудні". Підтримується самими сховищами через
+     * {@link AbstractStorage#markDirty()} та {@link AbstractStorage#clearDirty()}.
+     */
+    private final BitSet dirtySlots = new BitSet();
+
+    /**
+     * Останні збережені теги сховищ, індексовані так само, як {@link #storages}.
+     * Повторно використовуються у {@link #toNBT()}, доки сховище не змінилося. Теги кешу ніколи не віддаються назовні:
+     * у результат потрапляють лише їхні копії.
+     */
+    private SavedEntry[] savedEntries;
+
+    /**
+     * Збережені теги сховищ, розбір яких відкладено до першого звернення, індексовані так само,
+     * як {@link #storages}. Створюється лише після {@link #loadDeferred(CompoundTag)}.
+     */
+    @Nullable
+    private CompoundTag[] deferredTags;
+
+    /**
+     * Тік найстарішої несинхронізованої зміни кожного сховища
+     */
+    private int[] dirtySinceTicks;
+
+    /**
+     * Тік останньої синхронізації кожного сховища або {@link Integer#MIN_VALUE}
+     */
+    private int[] lastSyncTicks;
+
+    /**
+     * Лічильник змін, що впливають на збережені дані: змін сховищ та заміни слотів
+     */
+    private long persistGeneration = 0;
+
+    /**
+     * Значення {@link #persistGeneration}, про яке востаннє повідомлено механізму збереження власника
+     */
+    private long reportedPersistGeneration = 0;
+
+    /**
+     * Чи належить власник клієнтській стороні. Клієнтські сховища не додаються до черги синхронізації.
+     */
+    private final boolean clientSide;
+
+    /**
+     * Чи перебуває це сховище у {@link DirtyStorageQueue}
+     */
+    private boolean queued = false;
+
+    /**
+     * Чи належить сховище потоку завантаження і ще не опубліковане основному потоку
+     */
+    private boolean detached = false;
+
+    /**
+     * Чи потрібно зберегти сховище після публікації
+     */
+    private boolean saveRequested = false;
+
     /**
      * Створює нове комбіноване сховище для вказаного власника.
      *
@@ -50,28 +180,110 @@ public class CombinedStorage {
      */
     public CombinedStorage(StorageHolder holder) {
         this.holder = holder;
+        this.storageType = holder.eternalCore$getStorageType();
+        this.registry = StorageManager.getRegistry(this.storageType);
+        this.storages = new AbstractStorage[this.registry.size()];
+        this.savedEntries = new SavedEntry[this.storages.length];
+        this.dirtySinceTicks = new int[this.storages.length];
+        this.lastSyncTicks = new int[this.storages.length];
+        Arrays.fill(this.lastSyncTicks, Integer.MIN_VALUE);
+        this.clientSide = this.registry.isClientSide(holder);
     }
 
     /**
      * Серіалізує всі сховища у NBT формат.
+     * <p>
+     * Сховища, які не змінювалися з моменту попереднього збереження, повторно не серіалізуються:
+     * замість цього використовується копія їхнього збереженого раніше тегу. Результат належить
+     * викликачу, тож його зміна (наприклад, іншим модом або DataFixer) не впливає на кеш.
+     * </p>
      *
      * @return CompoundTag, що містить серіалізовані дані всіх сховищ
      */
     public CompoundTag toNBT() {
         CompoundTag tag = new CompoundTag();
 
-        ListTag entriesTag = new ListTag();
-        this.storages.forEach((id, storage) -> {
-            CompoundTag entryTag = new CompoundTag();
-            entryTag.putString(STORAGE_ID_KEY, id.toString());
-            storage.save(entryTag);
-            entriesTag.add(entryTag);
-        });
+        CompoundTag storagesTag = new CompoundTag();
+        for (int i = 0; i < this.storages.length; i++) {
+            AbstractStorage storage = this.storages[i];
+            if (storage == null) {
+                // Storages that were never accessed keep their loaded data unchanged
+                CompoundTag deferredTag = this.getDeferredTag(i);
+                if (deferredTag != null) storagesTag.put(this.idOf(i).toString(), deferredTag.copy());
+                continue;
+            }
+            storagesTag.put(this.idOf(i).toString(), this.saveEntry(i, storage).copy());
+        }
 
-        tag.put(STORAGE_LIST_KEY, entriesTag);
+        tag.putByte(FORMAT_VERSION_KEY, (byte) FORMAT_VERSION);
+        tag.put(STORAGES_KEY, storagesTag);
         return tag;
     }
 
+    /**
+     * Повертає збережений тег сховища, серіалізуючи його лише після змін.
+     *
+     * @param index   Індекс сховища
+     * @param storage Екземпляр сховища
+     * @return Тег сховища
+     */
+    private CompoundTag saveEntry(int index, AbstractStorage storage) {
+        CompoundTag savedTag = this.getSavedTag(index, storage);
+        if (savedTag != null) return savedTag;
+
+        int generation = storage.getPersistGeneration();
+        CompoundTag entryTag = new CompoundTag();
+        storage.save(entryTag);
+        this.savedEntries[index] = new SavedEntry(storage, generation, entryTag);
+        return entryTag;
+    }
+
+    /**
+     * Повертає збережений раніше тег сховища, якщо сховище відтоді не змінилося.
+     *
+     * @param index   Індекс сховища
+     * @param storage Екземпляр сховища
+     * @return Збережений тег або null, якщо його потрібно створити заново
+     */
+    @Nullable
+    private CompoundTag getSavedTag(int index, AbstractStorage storage) {
+        SavedEntry saved = this.savedEntries[index];
+        if (saved == null || saved.storage() != storage || saved.generation() != storage.getPersistGeneration()) return null;
+        return saved.tag();
+    }
+
+    /**
+     * Створює знімок стану всіх сховищ для збереження на іншому потоці.
+     * <p>
+     * Знімок створюється на основному потоці: для незмінених сховищ береться їхній збережений тег,
+     * для решти — {@link AbstractStorage#snapshot()}. Сам NBT будується пізніше методом
+     * {@link Snapshot#toNBT()}, який можна викликати на будь-якому потоці.
+     * </p>
+     *
+     * @return Знімок стану сховищ
+     */
+    public Snapshot snapshot() {
+        List<SnapshotEntry> entries = new ArrayList<>();
+        boolean isDefault = true;
+        for (int i = 0; i < this.storages.length; i++) {
+            AbstractStorage storage = this.storages[i];
+            if (storage == null) {
+                CompoundTag deferredTag = this.getDeferredTag(i);
+                if (deferredTag != null) {
+                    isDefault = false;
+                    entries.add(new SnapshotEntry(this.idOf(i).toString(), null, deferredTag));
+                }
+                continue;
+            }
+            if (!storage.isDefault()) isDefault = false;
+            CompoundTag savedTag = this.getSavedTag(i, storage);
+            entries.add(savedTag != null
+                    ? new SnapshotEntry(this.idOf(i).toString(), null, savedTag)
+                    : new SnapshotEntry(this.idOf(i).toString(), storage.snapshot(), null));
+        }
+        return new Snapshot(List.copyOf(entries), isDefault);
+    }
+
     /**
      * Завантажує всі сховища з NBT даних.
      * <p>
@@ -82,26 +294,157 @@ public class CombinedStorage {
      * @param tag CompoundTag, що містить серіалізовані дані сховищ
      */
     public void load(CompoundTag tag) {
-        ListTag entriesTag = tag.getList(STORAGE_LIST_KEY, Tag.TAG_COMPOUND);
-
-        entriesTag.forEach(t -> {
-            // Get serialized storage data
-            CompoundTag entryTag = (CompoundTag) t;
-            // Get storage id
-            ResourceLocation id = ResourceLocation.parse(entryTag.getString(STORAGE_ID_KEY));
+        forEachEntry(tag, (id, rawId, entryTag, legacy) -> {
             // Construct storage
-            AbstractStorage storage = StorageManager.constructStorageFor(this.holder.eternalCore$getStorageType(), id, holder);
-            if (storage == null) {
-                EternalCore.LOG.warn("Failed to construct storage for id {}. All information about this storage will be dropped!", id);
+            int index = id == null ? -1 : this.registry.indexOf(id);
+            if (index < 0) {
+                EternalCore.LOG.warn("Failed to construct storage for id {}. All information about this storage will be dropped!", rawId);
                 return;
             }
+            AbstractStorage storage = this.registry.create(index, this.holder);
             // Load storage data
-            storage.load(entryTag);
-            // Put storage into map
-            this.storages.put(id, storage);
+            storage.load(legacy ? upgradeLegacy(storage, entryTag) : entryTag);
+            // Loaded data is neither a change to sync nor to save
+            storage.clearDirty();
+            // Put storage into its slot
+            this.set(index, storage);
         });
     }
 
+    /**
+     * Обходить записи сховищ у NBT даних поточного або першого формату.
+     *
+     * @param tag      CompoundTag, що містить серіалізовані дані сховищ
+     * @param consumer Обробник записів
+     */
+    private static void forEachEntry(CompoundTag tag, EntryConsumer consumer) {
+        if (tag.contains(FORMAT_VERSION_KEY, Tag.TAG_ANY_NUMERIC)) {
+            CompoundTag storagesTag = tag.getCompound(STORAGES_KEY);
+            for (String key : storagesTag.getAllKeys()) {
+                consumer.accept(ResourceLocationCache.parse(key), key, storagesTag.getCompound(key), false);
+            }
+            return;
+        }
+        for (Tag t : tag.getList(LEGACY_STORAGE_LIST_KEY, Tag.TAG_COMPOUND)) {
+            CompoundTag entryTag = (CompoundTag) t;
+            String rawId = entryTag.getString(LEGACY_STORAGE_ID_KEY);
+            consumer.accept(ResourceLocationCache.parse(rawId), rawId, entryTag, true);
+        }
+    }
+
+    /**
+     * Перетворює тег сховища першого формату на поточний.
+     *
+     * @param storage  Сховище, якому належать дані
+     * @param entryTag Тег запису першого формату
+     * @return Копія тегу у поточному форматі
+     */
+    private static CompoundTag upgradeLegacy(AbstractStorage storage, CompoundTag entryTag) {
+        CompoundTag data = entryTag.copy();
+        data.remove(LEGACY_STORAGE_ID_KEY);
+        storage.upgradeLegacyData(data);
+        return data;
+    }
+
+    /**
+     * Перевіряє, чи записані NBT дані у першому форматі.
+     *
+     * @param tag CompoundTag, що містить серіалізовані дані сховищ
+     * @return true, якщо дані не містять версії формату
+     */
+    private static boolean isLegacy(CompoundTag tag) {
+        return !tag.contains(FORMAT_VERSION_KEY, Tag.TAG_ANY_NUMERIC);
+    }
+
+    /**
+     * Завантажує сховища з NBT даних, відкладаючи розбір сховищ, які не потрібні клієнтам.
+     * <p>
+     * Сховища, дані яких отримують гравці (див. {@link StorageVisibility}), завантажуються одразу,
+     * оскільки завантажене сховище синхронізується в кінці тіку. Для решти лише запам'ятовується тег:
+     * сховище створюється та читає його при першому зверненні. Якщо до сховища так і не звернулися,
+     * під час збереження тег записується без змін.
+     * </p>
+     *
+     * @param tag CompoundTag, що містить серіалізовані дані сховищ
+     */
+    public void loadDeferred(CompoundTag tag) {
+        // Legacy data has to be upgraded by the storage itself, so it cannot be kept raw
+        if (isLegacy(tag)) {
+            this.load(tag);
+            return;
+        }
+        ServerPlayer owner = this.holder.eternalCore$getOwningPlayer();
+        BitSet eager = owner != null ? this.registry.getOwnerSlots() : this.registry.getTrackingSlots();
+        CompoundTag storagesTag = tag.getCompound(STORAGES_KEY);
+        CompoundTag eagerEntries = new CompoundTag();
+
+        for (String key : storagesTag.getAllKeys()) {
+            CompoundTag entryTag = storagesTag.getCompound(key);
+            ResourceLocation id = ResourceLocationCache.parse(key);
+            int index = id == null ? -1 : this.registry.indexOf(id);
+            if (index < 0 || eager.get(index)) {
+                // Unknown storages are reported by the regular load
+                eagerEntries.put(key, entryTag);
+                continue;
+            }
+            AbstractStorage previous = index < this.storages.length ? this.storages[index] : null;
+            if (previous != null) {
+                previous.bindOwner(null, -1);
+                this.storages[index] = null;
+                this.dirtySlots.clear(index);
+            }
+            if (this.deferredTags == null) this.deferredTags = new CompoundTag[this.registry.size()];
+            this.deferredTags[index] = entryTag;
+            this.savedEntries[index] = null;
+            this.persistGeneration++;
+        }
+
+        if (eagerEntries.isEmpty()) return;
+        CompoundTag eagerTag = new CompoundTag();
+        eagerTag.putByte(FORMAT_VERSION_KEY, (byte) FORMAT_VERSION);
+        eagerTag.put(STORAGES_KEY, eagerEntries);
+        this.load(eagerTag);
+    }
+
+    /**
+     * @param index Індекс сховища
+     * @return Відкладений тег сховища або null, якщо його немає
+     */
+    @Nullable
+    private CompoundTag getDeferredTag(int index) {
+        return this.deferredTags != null && index < this.deferredTags.length ? this.deferredTags[index] : null;
+    }
+
+    /**
+     * Створює сховище з відкладеного тегу.
+     *
+     * @param index Індекс сховища
+     * @return Завантажене сховище або null, якщо відкладеного тегу немає
+     */
+    @Nullable
+    private AbstractStorage loadDeferredStorage(int index) {
+        CompoundTag deferredTag = this.getDeferredTag(index);
+        if (deferredTag == null) return null;
+        this.deferredTags[index] = null;
+        AbstractStorage storage = this.registry.create(index, this.holder);
+        storage.load(deferredTag);
+        // The data was already saved and is unchanged, clients do not receive this storage
+        storage.clearDirty();
+        this.set(index, storage);
+        this.savedEntries[index] = new SavedEntry(storage, storage.getPersistGeneration(), deferredTag);
+        return storage;
+    }
+
+    /**
+     * Завантажує всі відкладені сховища.
+     */
+    private void loadAllDeferred() {
+        if (this.deferredTags == null) return;
+        for (int i = 0; i < this.deferredTags.length; i++) {
+            this.loadDeferredStorage(i);
+        }
+    }
+
     /**
      * Обробляє пакет оновлення для синхронізації сховищ.
      * <p>
@@ -113,19 +456,17 @@ public class CombinedStorage {
      * @param tag CompoundTag, що містить дані оновлення для сховищ
      */
     public void handleUpdatePacket(CompoundTag tag) {
-        ListTag entriesTag = tag.getList(STORAGE_LIST_KEY, Tag.TAG_COMPOUND);
-
-        for (Tag e : entriesTag) {
-            CompoundTag entryTag = (CompoundTag) e;
-            ResourceLocation id = ResourceLocation.tryParse(entryTag.getString(STORAGE_ID_KEY));
-            AbstractStorage storage = this.storages.get(id);
+        forEachEntry(tag, (id, rawId, entryTag, legacy) -> {
+            AbstractStorage storage = id == null ? null : this.get(id);
             if (storage == null) {
-                EternalCore.LOG.warn("Failed to find storage for id {}. All information about this storage will be dropped!", id);
-                continue;
+                EternalCore.LOG.warn("Failed to find storage for id {}. All information about this storage will be dropped!", rawId);
+                return;
             }
 
-            storage.loadUpdate(entryTag);
-        }
+            storage.loadUpdate(legacy ? upgradeLegacy(storage, entryTag) : entryTag);
+            this.savedEntries[this.registry.indexOf(id)] = null;
+            this.persistGeneration++;
+        });
     }
 
     /**
@@ -135,56 +476,739 @@ public class CombinedStorage {
      * @param storage Екземпляр сховища для додавання
      */
     public void add(ResourceLocation id, AbstractStorage storage) {
-        this.storages.put(id, storage);
+        int index = this.registry.indexOf(id);
+        if (index < 0) {
+            throw new IllegalArgumentException("Storage with id " + id + " is not registered for " + this.storageType);
+        }
+        this.set(index, storage);
+    }
+
+    /**
+     * Встановлює сховище у слот із вказаним індексом.
+     *
+     * @param index   Індекс сховища ({@link StorageKey#index()})
+     * @param storage Екземпляр сховища
+     */
+    public void set(int index, AbstractStorage storage) {
+        if (index >= this.storages.length) {
+            this.storages = Arrays.copyOf(this.storages, Math.max(index + 1, this.registry.size()));
+            this.savedEntries = Arrays.copyOf(this.savedEntries, this.storages.length);
+            int previousLength = this.lastSyncTicks.length;
+            this.dirtySinceTicks = Arrays.copyOf(this.dirtySinceTicks, this.storages.length);
+            this.lastSyncTicks = Arrays.copyOf(this.lastSyncTicks, this.storages.length);
+            Arrays.fill(this.lastSyncTicks, previousLength, this.lastSyncTicks.length, Integer.MIN_VALUE);
+        }
+        this.savedEntries[index] = null;
+        if (this.deferredTags != null && index < this.deferredTags.length) this.deferredTags[index] = null;
+        this.persistGeneration++;
+        AbstractStorage previous = this.storages[index];
+        if (previous != null && previous != storage) previous.bindOwner(null, -1);
+        this.storages[index] = storage;
+        this.lazySlots.clear(index);
+        storage.bindOwner(this, index);
+        if (storage.isDirty()) {
+            this.onStorageDirty(index);
+        } else {
+            this.dirtySlots.clear(index);
+        }
+    }
+
+    /**
+     * Позначає слоти як ліниві сховища згідно з планом приєднання.
+     *
+     * @param slots Індекси лінивих сховищ
+     */
+    public void markLazy(BitSet slots) {
+        this.lazySlots.or(slots);
+    }
+
+    /**
+     * Викликається сховищем, коли воно стає "брудним".
+     *
+     * @param index Індекс сховища
+     */
+    public void onStorageDirty(int index) {
+        if (!this.dirtySlots.get(index)) this.dirtySinceTicks[index] = StorageManager.getSyncTick();
+        this.dirtySlots.set(index);
+        this.persistGeneration++;
+        if (!this.queued && !this.clientSide && !this.detached) {
+            this.queued = true;
+            StorageManager.enqueueDirty(this);
+        }
+    }
+
+    /**
+     * Викликається сховищем, коли його статус "брудності" очищено.
+     *
+     * @param index Індекс сховища
+     */
+    public void onStorageClean(int index) {
+        this.dirtySlots.clear(index);
+    }
+
+    /**
+     * Відокремлює сховище від основного потоку на час завантаження власника.
+     * <p>
+     * Поки сховище відокремлене, зміни сховищ лише позначаються, але сховище не додається
+     * до черги синхронізації. Викликається потоком, що створює власника, до заповнення сховища.
+     * </p>
+     */
+    public void detach() {
+        this.detached = true;
+    }
+
+    /**
+     * Просить зберегти сховище одразу після публікації, наприклад, щоб перенести завантажені дані
+     * у інше місце збереження. Для неприєднаного сховища запит виконується негайно.
+     */
+    public void requestSave() {
+        if (this.detached) {
+            this.saveRequested = true;
+        } else if (this.holder instanceof LevelChunk chunk) {
+            ChunkStorageSidecar.markUnsaved(chunk);
+        }
+    }
+
+    /**
+     * Публікує відокремлене сховище основному потоку.
+     * <p>
+     * Повинен викликатися на основному потоці, коли власник стає доступним світу. Зміни, зроблені
+     * під час завантаження, додаються до черги синхронізації, а запитане збереження виконується.
+     * Поточний стан вважається збереженим ({@link #takePersistChange()}). Для неприєднаного сховища
+     * більше нічого не робить.
+     * </p>
+     */
+    public void publish() {
+        // Data filled in while loading is already saved
+        this.reportedPersistGeneration = this.persistGeneration;
+        if (!this.detached) return;
+        this.detached = false;
+        this.requeueDeferred();
+        if (this.saveRequested) {
+            this.saveRequested = false;
+            this.requestSave();
+        }
+    }
+
+    /**
+     * Встановлює позначку перебування у {@link DirtyStorageQueue}.
+     *
+     * @param queued true, якщо сховище додано до черги
+     */
+    void setQueued(boolean queued) {
+        this.queued = queued;
+    }
+
+    /**
+     * Перевіряє, чи всі сховища перебувають у стані за замовчуванням.
+     * <p>
+     * Таке комбіноване сховище можна не зберігати: після завантаження власник отримає
+     * ті самі сховища у тому самому стані.
+     * </p>
+     *
+     * @return true, якщо кожне приєднане сховище повідомляє {@link AbstractStorage#isDefault()}
+     */
+    public boolean isDefault() {
+        for (AbstractStorage storage : this.storages) {
+            if (storage != null && !storage.isDefault()) return false;
+        }
+        if (this.deferredTags != null) {
+            for (CompoundTag deferredTag : this.deferredTags) {
+                if (deferredTag != null) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Повертає лічильник змін, що впливають на збережені дані.
+     * <p>
+     * Значення збільшується при кожному виклику {@link AbstractStorage#markDirty()} будь-якого зі сховищ
+     * та при заміні сховищ, тому незмінне значення означає, що повторне збереження не потрібне.
+     * </p>
+     *
+     * @return Поточне значення лічильника
+     */
+    public long getPersistGeneration() {
+        return this.persistGeneration;
+    }
+
+    /**
+     * Перевіряє, чи змінилися збережені дані з попереднього виклику або з моменту публікації.
+     * <p>
+     * Використовується, щоб позначати власника як незбереженого лише після справжніх змін,
+     * а не після створення, завантаження чи повторної постановки в чергу синхронізації.
+     * </p>
+     *
+     * @return true, якщо {@link #getPersistGeneration()} збільшився з попереднього виклику
+     */
+    public boolean takePersistChange() {
+        if (this.persistGeneration == this.reportedPersistGeneration) return false;
+        this.reportedPersistGeneration = this.persistGeneration;
+        return true;
+    }
+
+    /**
+     * @return Власник цього комбінованого сховища
+     */
+    public StorageHolder getHolder() {
+        return this.holder;
+    }
+
+    /**
+     * Переносить усі сховища до комбінованого сховища іншого власника.
+     * <p>
+     * Сховища, що підтримують {@link AbstractStorage#transferTo(StorageHolder)}, переходять до нового
+     * власника без серіалізації. Для решти створюються нові екземпляри, в які дані копіюються через NBT.
+     * Після перенесення це комбіноване сховище залишається порожнім і більше не створює лінивих сховищ.
+     * </p>
+     *
+     * @param target Комбіноване сховище нового власника
+     */
+    public void transferTo(CombinedStorage target) {
+        this.loadAllDeferred();
+        for (int i = 0; i < this.storages.length; i++) {
+            AbstractStorage storage = this.storages[i];
+            if (storage == null) continue;
+            this.storages[i] = null;
+            this.savedEntries[i] = null;
+            this.persistGeneration++;
+            this.dirtySlots.clear(i);
+            if (storage.transferTo(target.holder)) {
+                target.set(i, storage);
+                continue;
+            }
+            CompoundTag tag = new CompoundTag();
+            storage.save(tag);
+            storage.bindOwner(null, -1);
+            AbstractStorage copy = this.registry.create(i, target.holder);
+            copy.load(tag);
+            target.set(i, copy);
+        }
+        // The old holder must not create new default storages after its data was moved
+        this.lazySlots.clear();
+    }
+
+    /**
+     * Отримує сховище за його ключем.
+     * <p>
+     * Це основний шлях доступу до сховищ: звичайне читання з масиву з перевіркою меж.
+     * Ліниве сховище створюється при першому зверненні. Ключі без індексу шукаються за ідентифікатором.
+     * </p>
+     *
+     * @param key Ключ сховища
+     * @return Екземпляр сховища або null, якщо сховище не приєднано
+     */
+    @Nullable
+    public AbstractStorage get(StorageKey<?> key) {
+        int index = key.index();
+        // Keys created without an index are resolved by their id
+        if (index < 0) return this.get(key.id());
+        if (key.storageType() != this.storageType) return null;
+        AbstractStorage storage = index < this.storages.length ? this.storages[index] : null;
+        if (storage != null) return storage;
+        storage = this.loadDeferredStorage(index);
+        return storage != null ? storage : this.materialize(index);
     }
 
     /**
      * Отримує сховище за його ідентифікатором.
+     * <p>
+     * Використовується лише під час серіалізації; для звичайного доступу слід використовувати {@link #get(StorageKey)}.
+     * </p>
      *
      * @param id Ідентифікатор сховища
      * @return Екземпляр сховища або null, якщо сховище з таким ідентифікатором не знайдено
      */
     @Nullable
     public AbstractStorage get(ResourceLocation id) {
-        return this.storages.get(id);
+        int index = this.registry.indexOf(id);
+        if (index < 0) return null;
+        return this.get(index);
+    }
+
+    /**
+     * Отримує сховище за його індексом, створюючи ліниве сховище за потреби.
+     *
+     * @param index Індекс сховища
+     * @return Екземпляр сховища або null, якщо сховище не приєднано
+     */
+    @Nullable
+    private AbstractStorage get(int index) {
+        if (index < 0 || index >= this.registry.size()) return null;
+        AbstractStorage storage = index < this.storages.length ? this.storages[index] : null;
+        if (storage != null) return storage;
+        storage = this.loadDeferredStorage(index);
+        return storage != null ? storage : this.materialize(index);
+    }
+
+    /**
+     * Створює ліниве сховище у вказаному слоті, якщо його приєднання було дозволено.
+     * <p>
+     * Щойно створене сховище містить стан за замовчуванням, який клієнт відтворює так само,
+     * тому воно не позначається як "брудне".
+     * </p>
+     *
+     * @param index Індекс сховища
+     * @return Створене сховище або null, якщо слот не є лінивим
+     */
+    @Nullable
+    private AbstractStorage materialize(int index) {
+        if (!this.lazySlots.get(index)) return null;
+        AbstractStorage storage = this.registry.create(index, this.holder);
+        storage.clearDirty();
+        this.set(index, storage);
+        return storage;
+    }
+
+    /**
+     * Повертає ідентифікатор сховища за його індексом.
+     *
+     * @param index Індекс сховища
+     * @return Ідентифікатор сховища
+     */
+    private ResourceLocation idOf(int index) {
+        return this.registry.getEntry(index).key().id();
+    }
+
+    /**
+     * Створює пакет повної синхронізації, що містить дані всіх сховищ, видимих клієнтам.
+     *
+     * @return Закодовані дані всіх сховищ
+     * @see #loadSyncPacket(byte[])
+     */
+    public byte[] createSyncPacket() {
+        return this.createSyncPacket(this.registry.getOwnerSlots());
+    }
+
+    /**
+     * Перевіряє, чи є серед вказаних слотів створені або відкладені сховища.
+     *
+     * @param slots Індекси сховищ
+     * @return true, якщо повна синхронізація цих слотів містила б дані
+     */
+    public boolean hasStorages(BitSet slots) {
+        for (int i = slots.nextSetBit(0); i >= 0; i = slots.nextSetBit(i + 1)) {
+            if (i < this.storages.length && this.storages[i] != null) return true;
+            if (this.getDeferredTag(i) != null) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Створює пакет повної синхронізації, що містить дані вказаних сховищ.
+     *
+     * @param slots Індекси сховищ, видимих отримувачу
+     * @return Закодовані дані вказаних сховищ
+     * @see #loadSyncPacket(byte[])
+     */
+    public byte[] createSyncPacket(BitSet slots) {
+        if (this.deferredTags != null) {
+            for (int i = slots.nextSetBit(0); i >= 0 && i < this.deferredTags.length; i = slots.nextSetBit(i + 1)) {
+                this.loadDeferredStorage(i);
+            }
+        }
+        RegistryFriendlyByteBuf buf = this.createBuffer();
+        RegistryFriendlyByteBuf scratch = this.createBuffer();
+        int count = 0;
+        for (int i = slots.nextSetBit(0); i >= 0 && i < this.storages.length; i = slots.nextSetBit(i + 1)) {
+            if (this.storages[i] != null) count++;
+        }
+        buf.writeVarInt(count);
+        for (int i = slots.nextSetBit(0); i >= 0 && i < this.storages.length; i = slots.nextSetBit(i + 1)) {
+            if (this.storages[i] == null) continue;
+            this.writeEntry(buf, scratch, i, false);
+        }
+        return toByteArray(buf);
     }
 
     /**
      * Створює пакет оновлення, що містить дані змінених сховищ.
      * <p>
      * Цей метод збирає дані лише з тих сховищ, які були позначені як "брудні" (dirty),
-     * тобто їхні дані змінилися з моменту останньої синхронізації.
+     * тобто їхні дані змінилися з моменту останньої синхронізації. Обходяться лише
+     * встановлені біти набору "брудних" слотів.
      * </p>
      *
      * @param clean Якщо true, очищає статус "брудності" сховищ після створення пакету
-     * @return CompoundTag, що містить дані оновлення для змінених сховищ
+     * @return Закодовані дані змінених сховищ
+     * @see #handleUpdatePacket(byte[])
      */
-    public CompoundTag createUpdatePacket(boolean clean) {
-        CompoundTag tag = new CompoundTag();
+    public byte[] createUpdatePacket(boolean clean) {
+        RegistryFriendlyByteBuf buf = this.createBuffer();
+        RegistryFriendlyByteBuf scratch = this.createBuffer();
+        buf.writeVarInt(this.dirtySlots.cardinality());
+        for (int i = this.dirtySlots.nextSetBit(0); i >= 0; i = this.dirtySlots.nextSetBit(i + 1)) {
+            AbstractStorage storage = this.storages[i];
+            this.writeEntry(buf, scratch, i, true);
+            if (clean) storage.clearDirty();
+        }
+        return toByteArray(buf);
+    }
+
+    /**
+     * Повертає змінені сховища, яким настав час синхронізації згідно з їхньою {@link SyncPolicy}.
+     *
+     * @param tick Поточний серверний тік
+     * @return Індекси сховищ для синхронізації
+     */
+    public BitSet collectDueSlots(int tick) {
+        BitSet due = new BitSet();
+        for (int i = this.dirtySlots.nextSetBit(0); i >= 0; i = this.dirtySlots.nextSetBit(i + 1)) {
+            SyncPolicy policy = this.registry.getSyncPolicy(i);
+            if (policy.isDue(this.storages[i], this.dirtySinceTicks[i], this.lastSyncTicks[i], tick)) due.set(i);
+        }
+        return due;
+    }
+
+    /**
+     * Кодує оновлення вказаних змінених сховищ, з якого потім складаються пакети для різних отримувачів.
+     * <p>
+     * Кожне сховище кодується один раз, навіть якщо його отримують гравці з різною видимістю.
+     * Статус "брудності" цих сховищ очищається, решта змін залишається до наступної синхронізації.
+     * </p>
+     *
+     * @param slots Індекси змінених сховищ, наприклад, результат {@link #collectDueSlots(int)}
+     * @param tick  Поточний серверний тік, що запам'ятовується як час синхронізації
+     * @return Закодовані записи вказаних сховищ
+     * @see #handleUpdatePacket(byte[])
+     */
+    public EncodedUpdate encodeUpdate(BitSet slots, int tick) {
+        RegistryFriendlyByteBuf buf = this.createBuffer();
+        RegistryFriendlyByteBuf scratch = this.createBuffer();
+        byte[][] entries = new byte[this.storages.length][];
+        for (int i = slots.nextSetBit(0); i >= 0; i = slots.nextSetBit(i + 1)) {
+            buf.clear();
+            this.writeEntry(buf, scratch, i, true);
+            entries[i] = toByteArray(buf);
+            this.storages[i].clearDirty();
+            this.lastSyncTicks[i] = tick;
+        }
+        return new EncodedUpdate(entries);
+    }
+
+    /**
+     * Вважає зміни вказаних сховищ синхронізованими, не кодуючи їх.
+     * <p>
+     * Використовується для сховищ, яких зараз не може отримати жоден гравець: статус "брудності"
+     * очищається, а тік запам'ятовується як час синхронізації.
+     * </p>
+     *
+     * @param slots Індекси змінених сховищ
+     * @param tick  Поточний серверний тік
+     */
+    public void skipSync(BitSet slots, int tick) {
+        for (int i = slots.nextSetBit(0); i >= 0; i = slots.nextSetBit(i + 1)) {
+            this.storages[i].clearDirty();
+            this.lastSyncTicks[i] = tick;
+        }
+    }
+
+    /**
+     * Повторно додає сховище до черги синхронізації, якщо у нього залишилися відкладені зміни.
+     */
+    public void requeueDeferred() {
+        if (this.isDirty() && !this.queued && !this.clientSide && !this.detached) {
+            this.queued = true;
+            StorageManager.enqueueDirty(this);
+        }
+    }
+
+    /**
+     * Завантажує всі сховища з пакету повної синхронізації.
+     * <p>
+     * Пакет застосовується до вже приєднаних сховищ на місці: існуючі екземпляри з бінарною
+     * синхронізацією перечитують свій стан, створюються лише сховища, яких бракує, а сховища,
+     * відсутні в пакеті, від'єднуються. Ліниві сховища після від'єднання знову можуть бути створені
+     * при першому зверненні. Сховища, що синхронізуються через NBT, створюються заново, оскільки
+     * {@link AbstractStorage#load(CompoundTag)} не зобов'язаний очищати попередній стан.
+     * Записи з невідомими індексами або пошкодженими даними пропускаються з попередженням у логах.
+     * </p>
+     *
+     * @param data Закодовані дані сховищ
+     * @see #createSyncPacket()
+     */
+    public void loadSyncPacket(byte[] data) {
+        this.readEntries(data, false);
+    }
+
+    /**
+     * Обробляє пакет оновлення для синхронізації сховищ.
+     *
+     * @param data Закодовані дані змінених сховищ
+     * @see #createUpdatePacket(boolean)
+     */
+    public void handleUpdatePacket(byte[] data) {
+        this.readEntries(data, true);
+    }
 
-        ListTag entriesTag = new ListTag();
-        this.storages.forEach((id, storage) -> {
-            if (!storage.isDirty()) return;
+    /**
+     * Записує один запис сховища: заголовок з індексом та способом кодування, довжину і дані.
+     *
+     * @param buf     Буфер пакету
+     * @param scratch Проміжний буфер для даних сховища
+     * @param index   Індекс сховища
+     * @param update  Чи записувати лише оновлення
+     */
+    private void writeEntry(RegistryFriendlyByteBuf buf, RegistryFriendlyByteBuf scratch, int index, boolean update) {
+        AbstractStorage storage = this.storages[index];
+        boolean binary = storage.hasBinarySync();
+        scratch.clear();
+        if (binary) {
+            if (update) {
+                storage.writeSyncUpdate(scratch);
+            } else {
+                storage.writeSync(scratch);
+            }
+        } else {
             CompoundTag entryTag = new CompoundTag();
-            entryTag.putString(STORAGE_ID_KEY, id.toString());
-            storage.saveOutdated(entryTag);
-            entriesTag.add(entryTag);
-            if (clean) storage.clearDirty();
-        });
+            if (update) {
+                storage.saveOutdated(entryTag);
+            } else {
+                storage.save(entryTag);
+            }
+            scratch.writeNbt(entryTag);
+        }
+        buf.writeVarInt(index << 1 | (binary ? 1 : 0));
+        buf.writeVarInt(scratch.readableBytes());
+        buf.writeBytes(scratch);
+    }
 
-        tag.put(STORAGE_LIST_KEY, entriesTag);
-        return tag;
+    /**
+     * Читає записи сховищ з пакету синхронізації.
+     *
+     * @param data   Закодовані дані сховищ
+     * @param update Чи є пакет оновленням існуючих сховищ
+     */
+    private void readEntries(byte[] data, boolean update) {
+        RegistryFriendlyByteBuf buf = new RegistryFriendlyByteBuf(Unpooled.wrappedBuffer(data), this.registryAccess());
+        BitSet received = update ? null : new BitSet();
+        int count = buf.readVarInt();
+        for (int i = 0; i < count; i++) {
+            int header = buf.readVarInt();
+            int index = StoragePalette.toLocal(this.storageType, header >>> 1);
+            boolean binary = (header & 1) != 0;
+            RegistryFriendlyByteBuf entryBuf = new RegistryFriendlyByteBuf(buf.readSlice(buf.readVarInt()), buf.registryAccess());
+
+            AbstractStorage storage;
+            if (update) {
+                storage = this.get(index);
+            } else if (index < 0 || index >= this.registry.size()) {
+                storage = null;
+            } else {
+                AbstractStorage existing = index < this.storages.length ? this.storages[index] : null;
+                storage = binary && existing != null ? existing : this.registry.create(index, this.holder);
+                received.set(index);
+            }
+            if (storage == null) {
+                EternalCore.LOG.warn("Failed to find storage for index {}. All information about this storage will be dropped!", header >>> 1);
+                continue;
+            }
+
+            try {
+                if (index < this.savedEntries.length) this.savedEntries[index] = null;
+                if (binary) {
+                    if (update) {
+                        storage.readSyncUpdate(entryBuf);
+                    } else {
+                        storage.readSync(entryBuf);
+                    }
+                } else {
+                    CompoundTag entryTag = entryBuf.readNbt();
+                    if (entryTag == null) continue;
+                    if (update) {
+                        storage.loadUpdate(entryTag);
+                    } else {
+                        storage.load(entryTag);
+                    }
+                }
+            } catch (Exception e) {
+                EternalCore.LOG.error("Failed to read sync data for storage {}", this.idOf(index), e);
+                continue;
+            }
+            if (!update && (index >= this.storages.length || this.storages[index] != storage)) this.set(index, storage);
+        }
+        if (received != null) this.removeMissing(received);
+    }
+
+    /**
+     * Від'єднує сховища, яких не було в пакеті повної синхронізації.
+     *
+     * @param received Індекси сховищ, отриманих у пакеті
+     */
+    private void removeMissing(BitSet received) {
+        for (int i = 0; i < this.storages.length; i++) {
+            AbstractStorage storage = this.storages[i];
+            if (storage == null || received.get(i)) continue;
+            storage.bindOwner(null, -1);
+            this.storages[i] = null;
+            this.savedEntries[i] = null;
+            this.persistGeneration++;
+            this.dirtySlots.clear(i);
+            if (this.registry.isLazy(i)) this.lazySlots.set(i);
+        }
+    }
+
+    /**
+     * Створює буфер для запису пакету з доступом до реєстрів світу власника.
+     *
+     * @return Порожній буфер
+     */
+    private RegistryFriendlyByteBuf createBuffer() {
+        return new RegistryFriendlyByteBuf(Unpooled.buffer(), this.registryAccess());
+    }
+
+    /**
+     * @return Доступ до реєстрів світу, в якому знаходиться власник
+     */
+    private RegistryAccess registryAccess() {
+        if (this.holder instanceof Entity entity) return entity.registryAccess();
+        if (this.holder instanceof LevelChunk chunk) return chunk.getLevel().registryAccess();
+        return ((Level) this.holder).registryAccess();
+    }
+
+    private static byte[] toByteArray(RegistryFriendlyByteBuf buf) {
+        byte[] data = new byte[buf.readableBytes()];
+        buf.readBytes(data);
+        return data;
     }
 
     /**
      * Перевіряє, чи було змінено будь-яке зі сховищ.
+     * <p>
+     * Перевірка виконується за O(1) за агрегованим набором "брудних" слотів.
+     * </p>
      *
      * @return true, якщо будь-яке зі сховищ позначено як "брудне" (dirty)
      */
     public boolean isDirty() {
-        for (AbstractStorage storage : this.storages.values()) {
-            if (storage.isDirty()) return true;
+        return !this.dirtySlots.isEmpty();
+    }
+
+    /**
+     * @return Індекси "брудних" сховищ. Результат не повинен змінюватися.
+     */
+    public BitSet getDirtySlots() {
+        return this.dirtySlots;
+    }
+
+    /**
+     * Збережений тег сховища разом із поколінням, для якого його створено.
+     *
+     * @param storage    Екземпляр сховища, з якого створено тег
+     * @param generation Значення {@link AbstractStorage#getPersistGeneration()} на момент збереження
+     * @param tag        Тег сховища
+     */
+    private record SavedEntry(AbstractStorage storage, int generation, CompoundTag tag) {
+    }
+
+    /**
+     * Обробник записів сховищ у NBT даних.
+     */
+    @FunctionalInterface
+    private interface EntryConsumer {
+        /**
+         * @param id       Ідентифікатор сховища або null, якщо його не вдалося розібрати
+         * @param rawId    Ідентифікатор сховища у вигляді рядка
+         * @param entryTag Тег сховища
+         * @param legacy   Чи записаний тег у першому форматі
+         */
+        void accept(@Nullable ResourceLocation id, String rawId, CompoundTag entryTag, boolean legacy);
+    }
+
+    /**
+     * Запис знімка: або вже збережений тег, або знімок сховища, який ще потрібно зберегти.
+     */
+    private record SnapshotEntry(String id, @Nullable StorageSnapshot snapshot, @Nullable CompoundTag savedTag) {
+    }
+
+    /**
+     * Знімок стану комбінованого сховища, створений методом {@link #snapshot()}.
+     * <p>
+     * Знімок не звертається ні до сховищ, ні до комбінованого сховища, тож його можна зберігати
+     * на будь-якому потоці, поки основний потік продовжує змінювати сховища. Створені теги не потрапляють
+     * до кешу збережених тегів: його змінює лише основний потік.
+     * </p>
+     */
+    public static final class Snapshot {
+        private final List<SnapshotEntry> entries;
+        private final boolean isDefault;
+
+        private Snapshot(List<SnapshotEntry> entries, boolean isDefault) {
+            this.entries = entries;
+            this.isDefault = isDefault;
+        }
+
+        /**
+         * @return true, якщо на момент створення знімка всі сховища перебували у стані за замовчуванням
+         * @see CombinedStorage#isDefault()
+         */
+        public boolean isDefault() {
+            return this.isDefault;
+        }
+
+        /**
+         * Будує NBT з даних знімка у тому самому форматі, що й {@link CombinedStorage#toNBT()}.
+         *
+         * @return CompoundTag, що містить серіалізовані дані всіх сховищ
+         */
+        public CompoundTag toNBT() {
+            CompoundTag tag = new CompoundTag();
+
+            CompoundTag storagesTag = new CompoundTag();
+            for (SnapshotEntry entry : this.entries) {
+                if (entry.savedTag() != null) {
+                    storagesTag.put(entry.id(), entry.savedTag().copy());
+                    continue;
+                }
+                CompoundTag entryTag = new CompoundTag();
+                entry.snapshot().save(entryTag);
+                storagesTag.put(entry.id(), entryTag);
+            }
+
+            tag.putByte(FORMAT_VERSION_KEY, (byte) FORMAT_VERSION);
+            tag.put(STORAGES_KEY, storagesTag);
+            return tag;
+        }
+    }
+
+    /**
+     * Закодовані записи оновлення, створені методом {@link #encodeUpdate(BitSet, int)}.
+     */
+    public static final class EncodedUpdate {
+        /**
+         * Закодовані записи, індексовані за слотом сховища, або null для незмінених сховищ
+         */
+        private final byte[][] entries;
+
+        private EncodedUpdate(byte[][] entries) {
+            this.entries = entries;
+        }
+
+        /**
+         * Складає пакет оновлення з записів вказаних сховищ.
+         *
+         * @param visible Індекси сховищ, видимих отримувачу
+         * @return Закодовані дані сховищ або null, якщо жодне видиме сховище не змінилося
+         */
+        @Nullable
+        public byte[] select(BitSet visible) {
+            int count = 0;
+            int size = 0;
+            for (int i = visible.nextSetBit(0); i >= 0 && i < this.entries.length; i = visible.nextSetBit(i + 1)) {
+                if (this.entries[i] == null) continue;
+                count++;
+                size += this.entries[i].length;
+            }
+            if (count == 0) return null;
+            FriendlyByteBuf buf = new FriendlyByteBuf(Unpooled.buffer(size + 5));
+            buf.writeVarInt(count);
+            for (int i = visible.nextSetBit(0); i >= 0 && i < this.entries.length; i = visible.nextSetBit(i + 1)) {
+                if (this.entries[i] != null) buf.writeBytes(this.entries[i]);
+            }
+            byte[] data = new byte[buf.readableBytes()];
+            buf.readBytes(data);
+            return data;
         }
-        return false;
     }
 }
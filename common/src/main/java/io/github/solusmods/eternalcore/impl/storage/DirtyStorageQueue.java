@@ -0,0 +1,65 @@
+package io.github.solusmods.eternalcore.impl.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Серверна черга комбінованих сховищ, що мають несинхронізовані зміни.
+ * <p>
+ * {@link CombinedStorage} додає себе до черги один раз при першій зміні будь-якого зі своїх сховищ,
+ * а {@link StorageManager} спорожнює чергу в кінці кожного серверного тіку. Таким чином, власники
+ * не перевіряють свій стан у власних тіках, а синхронізуються навіть сутності та чанки,
+ * які завантажені, але не тікають.
+ * </p>
+ * <p>
+ * Черга потокобезпечна, оскільки сховища можуть створюватися та змінюватися на робочих потоках
+ * (наприклад, під час завантаження чанків).
+ * </p>
+ */
+public final class DirtyStorageQueue {
+    /**
+     * Комбіновані сховища, що очікують синхронізації
+     */
+    private final Queue<CombinedStorage> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Додає комбіноване сховище до черги.
+     *
+     * @param storage Комбіноване сховище зі змінами
+     */
+    public void enqueue(CombinedStorage storage) {
+        this.queue.add(storage);
+    }
+
+    /**
+     * Спорожнює чергу, передаючи кожне сховище обробнику.
+     * <p>
+     * Обробляються лише сховища, що були в черзі на момент виклику. Перед викликом обробника
+     * з комбінованого сховища знімається позначка перебування в черзі, тож зміни, зроблені під час
+     * обробки, знову додадуть його до черги і будуть оброблені в наступному тіку.
+     * </p>
+     *
+     * @param consumer Обробник сховищ
+     */
+    public void flush(Consumer<CombinedStorage> consumer) {
+        List<CombinedStorage> pending = new ArrayList<>();
+        CombinedStorage storage;
+        while ((storage = this.queue.poll()) != null) {
+            pending.add(storage);
+        }
+        for (CombinedStorage combinedStorage : pending) {
+            combinedStorage.setQueued(false);
+            consumer.accept(combinedStorage);
+        }
+    }
+
+    /**
+     * @return true, якщо черга порожня
+     */
+    public boolean isEmpty() {
+        return this.queue.isEmpty();
+    }
+}
@@ -0,0 +1,129 @@
+package io.github.solusmods.eternalcore.impl.storage;
+
+import dev.architectury.registry.registries.Registrar;
+import lombok.experimental.UtilityClass;
+import net.minecraft.resources.ResourceLocation;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Спільний кеш розбору ідентифікаторів, що зустрічаються у збережених даних.
+ * <p>
+ * Під час завантаження сховищ ті самі рядки ідентифікаторів (сховищ, світів, стадій, стихій)
+ * розбираються для кожного власника. Кеш повертає один і той самий екземпляр {@link ResourceLocation}
+ * для однакових рядків, а також запам'ятовує відповідні записи реєстрів.
+ * </p>
+ * <p>
+ * Кеш обмежений: після досягнення {@link #MAX_SIZE} записів він очищується повністю. Кешуються лише
+ * успішні результати, тож недійсні рядки та ще не зареєстровані записи перевіряються щоразу.
+ * Кеш потокобезпечний, оскільки чанки завантажуються на робочих потоках.
+ * </p>
+ * <p>
+ * Кожне звернення до {@link #parse(String)} або {@link #resolve(Registrar, String)} рахується рівно один раз:
+ * як влучання, якщо результат узято з кешу, або як промах. Кеш очищується після зупинки сервера.
+ * </p>
+ */
+@UtilityClass
+public final class ResourceLocationCache {
+    /**
+     * Максимальна кількість записів у кожному кеші
+     */
+    public static final int MAX_SIZE = 4096;
+
+    private static final Map<String, ResourceLocation> LOCATIONS = new ConcurrentHashMap<>();
+    private static final Map<Registrar<?>, Map<String, Object>> ENTRIES = new ConcurrentHashMap<>();
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    /**
+     * Розбирає ідентифікатор так само, як {@link ResourceLocation#tryParse(String)}, використовуючи кеш.
+     *
+     * @param value Рядок ідентифікатора
+     * @return Ідентифікатор або null, якщо рядок недійсний
+     */
+    @Nullable
+    public static ResourceLocation parse(String value) {
+        ResourceLocation location = LOCATIONS.get(value);
+        if (location != null) {
+            HITS.increment();
+            return location;
+        }
+        MISSES.increment();
+        return parseUncounted(value);
+    }
+
+    @Nullable
+    private static ResourceLocation parseUncounted(String value) {
+        ResourceLocation location = LOCATIONS.get(value);
+        if (location != null) return location;
+        location = ResourceLocation.tryParse(value);
+        if (location != null) put(LOCATIONS, value, location);
+        return location;
+    }
+
+    /**
+     * Знаходить запис реєстру за рядком ідентифікатора, використовуючи кеш.
+     *
+     * @param registrar Реєстр, у якому шукається запис
+     * @param value     Рядок ідентифікатора
+     * @param <T>       Тип записів реєстру
+     * @return Запис реєстру або null, якщо рядок недійсний або запис не зареєстровано
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public static <T> T resolve(Registrar<T> registrar, String value) {
+        Map<String, Object> entries = ENTRIES.computeIfAbsent(registrar, r -> new ConcurrentHashMap<>());
+        T entry = (T) entries.get(value);
+        if (entry != null) {
+            HITS.increment();
+            return entry;
+        }
+        MISSES.increment();
+        ResourceLocation location = parseUncounted(value);
+        if (location == null) return null;
+        entry = registrar.get(location);
+        if (entry != null) put(entries, value, entry);
+        return entry;
+    }
+
+    private static <V> void put(Map<String, V> cache, String key, V value) {
+        if (cache.size() >= MAX_SIZE) cache.clear();
+        cache.put(key, value);
+    }
+
+    /**
+     * @return Кількість звернень, обслужених кешем
+     */
+    public static long getHits() {
+        return HITS.sum();
+    }
+
+    /**
+     * @return Кількість звернень, для яких результат довелося знайти заново
+     */
+    public static long getMisses() {
+        return MISSES.sum();
+    }
+
+    /**
+     * @return Частка звернень, обслужених кешем, від 0 до 1
+     */
+    public static double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Очищує кеш та лічильники звернень.
+     */
+    public static void clear() {
+        LOCATIONS.clear();
+        ENTRIES.clear();
+        HITS.reset();
+        MISSES.reset();
+    }
+}
@@ -0,0 +1,50 @@
+package io.github.solusmods.eternalcore.impl.storage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Потік вводу-виводу, на якому знімки сховищ ({@link CombinedStorage#snapshot()}) перетворюються на NBT
+ * та записуються на диск.
+ * <p>
+ * Завдання виконуються по черзі, тож пізніший знімок завжди записується після попереднього.
+ * Основний потік лише створює знімки і не чекає на запис, окрім завершення роботи сервера.
+ * </p>
+ */
+public final class StorageIO {
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "eternalcore-storage-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private StorageIO() {
+    }
+
+    /**
+     * Додає завдання до черги потоку вводу-виводу.
+     *
+     * @param task Завдання
+     */
+    public static void execute(Runnable task) {
+        EXECUTOR.execute(task);
+    }
+
+    /**
+     * Виконує завдання на потоці вводу-виводу після всіх раніше доданих і чекає на його завершення.
+     *
+     * @param task Завдання
+     */
+    public static void executeAndWait(Runnable task) {
+        CompletableFuture.runAsync(task, EXECUTOR).join();
+    }
+
+    /**
+     * Чекає, доки всі додані записи буде завершено.
+     */
+    public static void awaitWrites() {
+        executeAndWait(() -> {
+        });
+    }
+}
@@ -1,14 +1,21 @@
 package io.github.solusmods.eternalcore.impl.storage;
 
+import dev.architectury.event.events.common.LifecycleEvent;
 import dev.architectury.event.events.common.PlayerEvent;
+import dev.architectury.event.events.common.TickEvent;
 import dev.architectury.networking.NetworkManager;
 import io.github.solusmods.eternalcore.EternalCore;
 import io.github.solusmods.eternalcore.api.storage.*;
 import io.github.solusmods.eternalcore.impl.storage.network.s2c.StorageSyncPayload;
+import io.github.solusmods.eternalcore.impl.storage.sidecar.ChunkStorageSidecar;
 import io.github.solusmods.eternalcore.impl.storage.network.s2c.SyncChunkStoragePayload;
 import io.github.solusmods.eternalcore.impl.storage.network.s2c.SyncEntityStoragePayload;
+import io.github.solusmods.eternalcore.impl.storage.network.s2c.SyncStorageBundlePayload;
+import io.github.solusmods.eternalcore.impl.storage.network.s2c.SyncStoragePalettePayload;
 import io.github.solusmods.eternalcore.impl.storage.network.s2c.SyncWorldStoragePayload;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
 import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.Entity;
@@ -16,6 +23,15 @@ import net.minecraft.world.level.Level;
 import net.minecraft.world.level.chunk.LevelChunk;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
 /**
  * Центральний менеджер сховищ для мода EternalCore.
  * <p>
@@ -36,19 +52,41 @@ import org.jetbrains.annotations.Nullable;
 public final class StorageManager {
 
     /**
-     * Реєстр сховищ для сутностей
+     * Реєстр сховищ для сутностей. Плани приєднання кешуються за типом сутності.
      */
-    private static final StorageRegistryImpl<Entity> ENTITY_STORAGE_REGISTRY = new StorageRegistryImpl<>();
+    private static final StorageRegistryImpl<Entity> ENTITY_STORAGE_REGISTRY = new StorageRegistryImpl<>(StorageType.ENTITY,
+            Entity::getType, entity -> entity.level().isClientSide());
 
     /**
-     * Реєстр сховищ для чанків
+     * Реєстр сховищ для чанків. Плани приєднання кешуються за виміром.
      */
-    private static final StorageRegistryImpl<LevelChunk> CHUNK_STORAGE_REGISTRY = new StorageRegistryImpl<>();
+    private static final StorageRegistryImpl<LevelChunk> CHUNK_STORAGE_REGISTRY = new StorageRegistryImpl<>(StorageType.CHUNK,
+            chunk -> chunk.getLevel().dimension(), chunk -> chunk.getLevel().isClientSide());
 
     /**
-     * Реєстр сховищ для світів
+     * Реєстр сховищ для світів. Плани приєднання кешуються за виміром.
      */
-    private static final StorageRegistryImpl<Level> LEVEL_STORAGE_REGISTRY = new StorageRegistryImpl<>();
+    private static final StorageRegistryImpl<Level> LEVEL_STORAGE_REGISTRY = new StorageRegistryImpl<>(StorageType.WORLD,
+            Level::dimension, Level::isClientSide);
+
+    /**
+     * Черга комбінованих сховищ зі змінами, що синхронізуються в кінці серверного тіку
+     */
+    private static final DirtyStorageQueue DIRTY_QUEUE = new DirtyStorageQueue();
+    /**
+     * Отримувачі поточної розсилки у {@link #dispatch}. Використовується повторно, оскільки розсилка
+     * виконується лише на серверному потоці і не є вкладеною.
+     */
+    private static final List<ServerPlayer> RECIPIENTS = new ArrayList<>();
+    /**
+     * Гравці, що отримали пакет для тих, хто відстежує джерело, у поточній розсилці {@link #dispatch}
+     */
+    private static final Set<ServerPlayer> TRACKING_RECIPIENTS = new ReferenceOpenHashSet<>();
+
+    /**
+     * Серверний тік останньої обробки черги синхронізації, за яким {@link SyncPolicy} відраховує інтервали
+     */
+    private static int syncTick = 0;
 
     /**
      * Приватний конструктор для запобігання створенню екземплярів.
@@ -63,6 +101,7 @@ public final class StorageManager {
      * Цей метод реєструє всі події, необхідні для правильної роботи системи сховищ,
      * включаючи обробники для подій приєднання гравця, респауну та зміни вимірів.
      * Також налаштовується копіювання сховища при клонуванні гравця.
+     * Після подій реєстрації всі реєстри сховищ заморожуються.
      * </p>
      * <p>
      * Повинен бути викликаний один раз під час ініціалізації мода.
@@ -72,8 +111,13 @@ public final class StorageManager {
         StorageEvents.REGISTER_WORLD_STORAGE.invoker().register(LEVEL_STORAGE_REGISTRY);
         StorageEvents.REGISTER_CHUNK_STORAGE.invoker().register(CHUNK_STORAGE_REGISTRY);
         StorageEvents.REGISTER_ENTITY_STORAGE.invoker().register(ENTITY_STORAGE_REGISTRY);
-        // Initial client synchronization
+        // Compile registrations into index-based dispatch tables; later registrations are rejected
+        LEVEL_STORAGE_REGISTRY.freeze();
+        CHUNK_STORAGE_REGISTRY.freeze();
+        ENTITY_STORAGE_REGISTRY.freeze();
+        // Initial client synchronization, preceded by the storage id palette
         PlayerEvent.PLAYER_JOIN.register(player -> {
+            NetworkManager.sendToPlayer(player, new SyncStoragePalettePayload(StoragePalette.createIds()));
             player.eternalCore$sync(player);
             ServerLevel level = player.serverLevel();
             level.eternalCore$sync(player);
@@ -90,12 +134,110 @@ public final class StorageManager {
             level.eternalCore$sync(player);
         });
 
-        // Copy storage from old player to new player
-        PlayerEvent.PLAYER_CLONE.register((oldPlayer, newPlayer, wonGame) -> {
-            CombinedStorage newStorage = new CombinedStorage(newPlayer);
-            newStorage.load(oldPlayer.eternalCore$getCombinedStorage().toNBT());
-            newPlayer.eternalCore$setCombinedStorage(newStorage);
+        // Move storages from old player to new player
+        PlayerEvent.PLAYER_CLONE.register((oldPlayer, newPlayer, wonGame) ->
+                oldPlayer.eternalCore$getCombinedStorage().transferTo(newPlayer.eternalCore$getCombinedStorage()));
+
+        // Synchronize all changed storages once per server tick
+        TickEvent.SERVER_POST.register(StorageManager::flushDirtyStorages);
+        // Snapshots queued during the final save must reach the disk before the server is gone
+        LifecycleEvent.SERVER_STOPPED.register(server -> StorageIO.awaitWrites());
+
+        // Optional chunk storage persistence outside of vanilla chunk data
+        ChunkStorageSidecar.init();
+
+        // Report how often storage decoding reused already parsed ids, then drop entries of the stopped server
+        LifecycleEvent.SERVER_STOPPED.register(server -> {
+            EternalCore.LOG.debug("Resource location cache: {} hits, {} misses, hit rate {}",
+                    ResourceLocationCache.getHits(), ResourceLocationCache.getMisses(),
+                    String.format("%.1f%%", ResourceLocationCache.getHitRate() * 100));
+            ResourceLocationCache.clear();
+        });
+    }
+
+    /**
+     * Додає комбіноване сховище до серверної черги синхронізації.
+     *
+     * @param storage Комбіноване сховище зі змінами
+     */
+    static void enqueueDirty(CombinedStorage storage) {
+        DIRTY_QUEUE.enqueue(storage);
+    }
+
+    /**
+     * @return Серверний тік останньої обробки черги синхронізації
+     */
+    static int getSyncTick() {
+        return syncTick;
+    }
+
+    /**
+     * Синхронізує всі змінені сховища, що накопичилися за тік.
+     * <p>
+     * Для кожного власника будується один пакет оновлення. Пакети групуються за гравцями, що відстежують
+     * власників, і кожен гравець отримує всі свої оновлення за тік у {@link SyncStorageBundlePayload},
+     * розділених за розміром.
+     * Чанки, збережені дані яких справді змінилися, додатково позначаються як незбережені.
+     * </p>
+     *
+     * @param server Сервер, тік якого завершився
+     */
+    private static void flushDirtyStorages(MinecraftServer server) {
+        int tick = server.getTickCount();
+        syncTick = tick;
+        if (DIRTY_QUEUE.isEmpty()) return;
+        server.getProfiler().push("eternalCoreStorageSync");
+        Map<ServerPlayer, List<StorageSyncPayload>> bundles = new LinkedHashMap<>();
+        DIRTY_QUEUE.flush(storage -> {
+            if (!storage.isDirty()) return;
+            StorageHolder holder = storage.getHolder();
+            // The holder replaced this storage since it was queued
+            if (holder.eternalCore$getCombinedStorage() != storage) return;
+            if (holder instanceof Entity entity && entity.isRemoved()) return;
+            if (holder instanceof LevelChunk chunk && storage.takePersistChange()) ChunkStorageSidecar.markUnsaved(chunk);
+            BitSet due = storage.collectDueSlots(tick);
+            retainReceivable(holder, due, tick);
+            if (due.isEmpty()) {
+                storage.requeueDeferred();
+                return;
+            }
+            CombinedStorage.EncodedUpdate update = storage.encodeUpdate(due, tick);
+            // Changes held back by their sync policy are sent in a later tick
+            storage.requeueDeferred();
+            dispatch(holder, true, update::select, (player, packet) -> bundles.computeIfAbsent(player, p -> new ArrayList<>()).add(packet));
         });
+        bundles.forEach(StorageManager::sendBundled);
+        server.getProfiler().pop();
+    }
+
+    /**
+     * Надсилає гравцю пакети оновлень, об'єднуючи їх у {@link SyncStorageBundlePayload}
+     * розміром не більше {@link SyncStorageBundlePayload#MAX_BUNDLE_SIZE}.
+     *
+     * @param player  Гравець-отримувач
+     * @param packets Пакети оновлень у порядку застосування
+     */
+    private static void sendBundled(ServerPlayer player, List<StorageSyncPayload> packets) {
+        int start = 0;
+        int bundleSize = 0;
+        for (int i = 0; i < packets.size(); i++) {
+            int size = packets.get(i).encodedSizeEstimate();
+            if (i > start && bundleSize + size > SyncStorageBundlePayload.MAX_BUNDLE_SIZE) {
+                sendBundle(player, packets.subList(start, i));
+                start = i;
+                bundleSize = 0;
+            }
+            bundleSize += size;
+        }
+        sendBundle(player, packets.subList(start, packets.size()));
+    }
+
+    private static void sendBundle(ServerPlayer player, List<StorageSyncPayload> packets) {
+        if (packets.size() == 1) {
+            NetworkManager.sendToPlayer(player, packets.get(0));
+        } else {
+            NetworkManager.sendToPlayer(player, new SyncStorageBundlePayload(List.copyOf(packets)));
+        }
     }
 
     /**
@@ -138,7 +280,17 @@ public final class StorageManager {
      * @param update Флаг, що вказує, чи надсилати лише оновлення
      */
     public static void syncTracking(StorageHolder source, boolean update) {
-        NetworkManager.sendToPlayers(source.eternalCore$getTrackingPlayers(), createSyncPacket(source, update));
+        CombinedStorage storage = source.eternalCore$getCombinedStorage();
+        if (update) {
+            int tick = levelOf(source).getServer().getTickCount();
+            BitSet dirty = (BitSet) storage.getDirtySlots().clone();
+            retainReceivable(source, dirty, tick);
+            if (dirty.isEmpty()) return;
+            CombinedStorage.EncodedUpdate encoded = storage.encodeUpdate(dirty, tick);
+            dispatch(source, true, encoded::select, NetworkManager::sendToPlayer);
+        } else {
+            dispatch(source, false, storage::createSyncPacket, NetworkManager::sendToPlayer);
+        }
     }
 
     /**
@@ -151,7 +303,135 @@ public final class StorageManager {
      * @param target Гравець, якому надсилаються дані
      */
     public static void syncTarget(StorageHolder source, ServerPlayer target) {
-        NetworkManager.sendToPlayer(target, createSyncPacket(source, false));
+        StorageRegistryImpl<?> registry = getRegistry(source.eternalCore$getStorageType());
+        BitSet visible = target == source.eternalCore$getOwningPlayer() ? registry.getOwnerSlots() : registry.getTrackingSlots();
+        NetworkManager.sendToPlayer(target, createPayload(source, false, source.eternalCore$getCombinedStorage().createSyncPacket(visible)));
+    }
+
+    /**
+     * Надсилає дані сховища гравцю, який почав відстежувати джерело.
+     * <p>
+     * Нові та завантажені сховища не позначаються як "брудні", тому гравці отримують їхній стан
+     * саме тут. Якщо видимих гравцю сховищ немає, пакет не надсилається.
+     * </p>
+     *
+     * @param source Джерело даних для синхронізації
+     * @param target Гравець, що почав відстежувати джерело
+     */
+    public static void syncStartTracking(StorageHolder source, ServerPlayer target) {
+        StorageRegistryImpl<?> registry = getRegistry(source.eternalCore$getStorageType());
+        BitSet visible = target == source.eternalCore$getOwningPlayer() ? registry.getOwnerSlots() : registry.getTrackingSlots();
+        CombinedStorage storage = source.eternalCore$getCombinedStorage();
+        if (!storage.hasStorages(visible)) return;
+        NetworkManager.sendToPlayer(target, createPayload(source, false, storage.createSyncPacket(visible)));
+    }
+
+    /**
+     * Залишає у наборі лише сховища, які зараз може отримати хоча б один гравець.
+     * <p>
+     * Власник отримує свої сховища, лише якщо він є, гравці, що відстежують джерело, — лише якщо такі є,
+     * а сховища з видимістю {@link StorageVisibility#DIMENSION} — якщо у вимірі є інші гравці.
+     * Відкинуті сховища не кодуються: їхні зміни лише вважаються синхронізованими
+     * ({@link CombinedStorage#skipSync(BitSet, int)}), а гравці, що з'являться пізніше, отримають повний стан.
+     * </p>
+     *
+     * @param source Джерело даних для синхронізації
+     * @param slots  Індекси змінених сховищ, що змінюються на місці
+     * @param tick   Поточний серверний тік
+     */
+    private static void retainReceivable(StorageHolder source, BitSet slots, int tick) {
+        StorageRegistryImpl<?> registry = getRegistry(source.eternalCore$getStorageType());
+        ServerPlayer owner = source.eternalCore$getOwningPlayer();
+        BitSet receivable = new BitSet();
+        if (owner != null) receivable.or(registry.getOwnerSlots());
+        try {
+            source.eternalCore$forEachTrackingPlayer(player -> {
+                if (player != owner) RECIPIENTS.add(player);
+            });
+            if (!RECIPIENTS.isEmpty()) {
+                // Tracking players also receive every dimension storage
+                receivable.or(registry.getTrackingSlots());
+            } else if (!registry.getDimensionSlots().isEmpty() && hasOtherPlayer(levelOf(source), owner)) {
+                receivable.or(registry.getDimensionSlots());
+            }
+        } finally {
+            RECIPIENTS.clear();
+        }
+        BitSet skipped = (BitSet) slots.clone();
+        skipped.andNot(receivable);
+        if (skipped.isEmpty()) return;
+        source.eternalCore$getCombinedStorage().skipSync(skipped, tick);
+        slots.andNot(skipped);
+    }
+
+    private static boolean hasOtherPlayer(ServerLevel level, @Nullable ServerPlayer owner) {
+        for (ServerPlayer player : level.players()) {
+            if (player != owner) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Розсилає дані сховищ гравцям з урахуванням {@link StorageVisibility} кожного сховища.
+     * <p>
+     * Власник отримує всі сховища, крім серверних, гравці, що відстежують джерело, — сховища
+     * з видимістю {@link StorageVisibility#TRACKING} та {@link StorageVisibility#DIMENSION},
+     * решта гравців виміру — лише сховища з видимістю {@link StorageVisibility#DIMENSION}.
+     * Спершу визначаються отримувачі, і дані кодуються лише для груп, у яких вони є.
+     * </p>
+     *
+     * @param source  Джерело даних для синхронізації
+     * @param update  Чи містять дані лише оновлення
+     * @param encoder Функція, що кодує видимі сховища або повертає null, якщо надсилати нічого
+     * @param sender  Обробник, що надсилає пакет гравцю
+     */
+    private static void dispatch(StorageHolder source, boolean update, Function<BitSet, byte[]> encoder, BiConsumer<ServerPlayer, StorageSyncPayload> sender) {
+        StorageRegistryImpl<?> registry = getRegistry(source.eternalCore$getStorageType());
+        ServerPlayer owner = source.eternalCore$getOwningPlayer();
+        if (owner != null) {
+            byte[] ownerData = encoder.apply(registry.getOwnerSlots());
+            if (ownerData != null) sender.accept(owner, createPayload(source, update, ownerData));
+        }
+
+        boolean hasDimensionSlots = !registry.getDimensionSlots().isEmpty();
+        try {
+            source.eternalCore$forEachTrackingPlayer(player -> {
+                if (player != owner) RECIPIENTS.add(player);
+            });
+            if (!RECIPIENTS.isEmpty()) {
+                byte[] trackingData = encoder.apply(registry.getTrackingSlots());
+                if (trackingData != null) {
+                    StorageSyncPayload packet = createPayload(source, update, trackingData);
+                    RECIPIENTS.forEach(player -> sender.accept(player, packet));
+                    // Players that received the tracking packet already have every dimension storage
+                    if (hasDimensionSlots) TRACKING_RECIPIENTS.addAll(RECIPIENTS);
+                }
+                RECIPIENTS.clear();
+            }
+
+            if (!hasDimensionSlots) return;
+            for (ServerPlayer player : levelOf(source).players()) {
+                if (player != owner && !TRACKING_RECIPIENTS.contains(player)) RECIPIENTS.add(player);
+            }
+            if (RECIPIENTS.isEmpty()) return;
+            byte[] dimensionData = encoder.apply(registry.getDimensionSlots());
+            if (dimensionData == null) return;
+            StorageSyncPayload packet = createPayload(source, update, dimensionData);
+            RECIPIENTS.forEach(player -> sender.accept(player, packet));
+        } finally {
+            RECIPIENTS.clear();
+            TRACKING_RECIPIENTS.clear();
+        }
+    }
+
+    /**
+     * @param holder Власник сховища
+     * @return Серверний вимір, в якому знаходиться власник
+     */
+    private static ServerLevel levelOf(StorageHolder holder) {
+        if (holder instanceof Entity entity) return (ServerLevel) entity.level();
+        if (holder instanceof LevelChunk chunk) return (ServerLevel) chunk.getLevel();
+        return (ServerLevel) holder;
     }
 
     /**
@@ -165,30 +445,23 @@ public final class StorageManager {
      * @return Пакет синхронізації відповідного типу
      */
     public static StorageSyncPayload createSyncPacket(StorageHolder source, boolean update) {
+        CombinedStorage storage = source.eternalCore$getCombinedStorage();
+        return createPayload(source, update, update ? storage.createUpdatePacket(true) : storage.createSyncPacket());
+    }
+
+    /**
+     * Загортає закодовані дані сховищ у пакет синхронізації відповідного типу власника.
+     *
+     * @param source Джерело даних для синхронізації
+     * @param update Чи містять дані лише оновлення
+     * @param data   Закодовані дані сховищ
+     * @return Пакет синхронізації відповідного типу
+     */
+    private static StorageSyncPayload createPayload(StorageHolder source, boolean update, byte[] data) {
         return switch (source.eternalCore$getStorageType()) {
-            case ENTITY -> {
-                Entity sourceEntity = (Entity) source;
-                yield new SyncEntityStoragePayload(
-                        update,
-                        sourceEntity.getId(),
-                        update ? sourceEntity.eternalCore$getCombinedStorage().createUpdatePacket(true)
-                                : sourceEntity.eternalCore$getCombinedStorage().toNBT()
-                );
-            }
-            case CHUNK -> {
-                LevelChunk sourceChunk = (LevelChunk) source;
-                yield new SyncChunkStoragePayload(
-                        update,
-                        sourceChunk.getPos(),
-                        update ? sourceChunk.eternalCore$getCombinedStorage().createUpdatePacket(true)
-                                : sourceChunk.eternalCore$getCombinedStorage().toNBT()
-                );
-            }
-            case WORLD -> new SyncWorldStoragePayload(
-                    update,
-                    update ? source.eternalCore$getCombinedStorage().createUpdatePacket(true)
-                            : source.eternalCore$getCombinedStorage().toNBT()
-            );
+            case ENTITY -> new SyncEntityStoragePayload(update, ((Entity) source).getId(), data);
+            case CHUNK -> new SyncChunkStoragePayload(update, ((LevelChunk) source).getPos(), data);
+            case WORLD -> new SyncWorldStoragePayload(update, data);
         };
     }
 
@@ -205,31 +478,26 @@ public final class StorageManager {
      */
     @Nullable
     public static AbstractStorage constructStorageFor(StorageType type, ResourceLocation id, StorageHolder holder) {
+        StorageRegistryImpl<?> registry = getRegistry(type);
+        int index = registry.indexOf(id);
+        if (index < 0) {
+            EternalCore.LOG.warn("Failed to find {} storage factory for id {}", type, id);
+            return null;
+        }
+        return registry.create(index, holder);
+    }
+
+    /**
+     * Повертає реєстр сховищ для вказаного типу власника.
+     *
+     * @param type Тип власника сховища
+     * @return Реєстр сховищ цього типу
+     */
+    public static StorageRegistryImpl<?> getRegistry(StorageType type) {
         return switch (type) {
-            case ENTITY -> {
-                var entry = ENTITY_STORAGE_REGISTRY.registry.get(id);
-                if (entry == null) {
-                    EternalCore.LOG.warn("Failed to find entity storage factory for id {}", id);
-                    yield null;
-                }
-                yield entry.getSecond().create((Entity) holder);
-            }
-            case CHUNK -> {
-                var entry = CHUNK_STORAGE_REGISTRY.registry.get(id);
-                if (entry == null) {
-                    EternalCore.LOG.warn("Failed to find chunk storage factory for id {}", id);
-                    yield null;
-                }
-                yield entry.getSecond().create((LevelChunk) holder);
-            }
-            case WORLD -> {
-                var entry = LEVEL_STORAGE_REGISTRY.registry.get(id);
-                if (entry == null) {
-                    EternalCore.LOG.warn("Failed to find world storage factory for id {}", id);
-                    yield null;
-                }
-                yield entry.getSecond().create((Level) holder);
-            }
+            case ENTITY -> ENTITY_STORAGE_REGISTRY;
+            case CHUNK -> CHUNK_STORAGE_REGISTRY;
+            case WORLD -> LEVEL_STORAGE_REGISTRY;
         };
     }
 
@@ -0,0 +1,98 @@
+package io.github.solusmods.eternalcore.impl.storage;
+
+import io.github.solusmods.eternalcore.EternalCore;
+import io.github.solusmods.eternalcore.api.storage.StorageType;
+import net.minecraft.resources.ResourceLocation;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Палітра ідентифікаторів сховищ для мережевої синхронізації.
+ * <p>
+ * Пакети синхронізації посилаються на сховища за їхнім індексом у реєстрі сервера.
+ * Під час входу гравця сервер надсилає списки ідентифікаторів сховищ кожного {@link StorageType}
+ * у порядку індексів, а клієнт будує відповідність серверних індексів своїм локальним.
+ * Тому порядок реєстрації сховищ на клієнті та сервері може відрізнятися.
+ * </p>
+ * <p>
+ * Доки палітру не отримано, індекси використовуються без змін.
+ * </p>
+ */
+public final class StoragePalette {
+    /**
+     * Відповідність серверних індексів локальним для кожного типу власника
+     */
+    @Nullable
+    private static volatile int[][] serverToLocal = null;
+
+    private StoragePalette() {
+    }
+
+    /**
+     * Створює списки ідентифікаторів зареєстрованих сховищ для відправки клієнту.
+     *
+     * @return Ідентифікатори сховищ, впорядковані за індексом, для кожного {@link StorageType}
+     */
+    public static List<List<ResourceLocation>> createIds() {
+        List<List<ResourceLocation>> ids = new ArrayList<>(StorageType.values().length);
+        for (StorageType type : StorageType.values()) {
+            StorageRegistryImpl<?> registry = StorageManager.getRegistry(type);
+            List<ResourceLocation> typeIds = new ArrayList<>(registry.size());
+            for (int i = 0; i < registry.size(); i++) {
+                typeIds.add(registry.getEntry(i).key().id());
+            }
+            ids.add(typeIds);
+        }
+        return ids;
+    }
+
+    /**
+     * Застосовує палітру, отриману від сервера.
+     * <p>
+     * Сховища, невідомі клієнту, відображаються в -1, і їхні дані пропускаються.
+     * </p>
+     *
+     * @param ids Ідентифікатори сховищ сервера для кожного {@link StorageType}
+     */
+    public static void apply(List<List<ResourceLocation>> ids) {
+        StorageType[] types = StorageType.values();
+        int[][] mapping = new int[types.length][];
+        for (StorageType type : types) {
+            List<ResourceLocation> typeIds = type.ordinal() < ids.size() ? ids.get(type.ordinal()) : List.of();
+            StorageRegistryImpl<?> registry = StorageManager.getRegistry(type);
+            int[] typeMapping = new int[typeIds.size()];
+            for (int i = 0; i < typeMapping.length; i++) {
+                typeMapping[i] = registry.indexOf(typeIds.get(i));
+                if (typeMapping[i] < 0) {
+                    EternalCore.LOG.warn("Server storage {} is not registered on the client. Its data will be ignored.", typeIds.get(i));
+                }
+            }
+            mapping[type.ordinal()] = typeMapping;
+        }
+        serverToLocal = mapping;
+    }
+
+    /**
+     * Скидає палітру попереднього сервера. Викликається на клієнті при виході з сервера,
+     * щоб індекси наступного сервера не перетворювалися за чужою палітрою.
+     */
+    public static void reset() {
+        serverToLocal = null;
+    }
+
+    /**
+     * Перетворює серверний індекс сховища на локальний.
+     *
+     * @param type        Тип власника сховища
+     * @param serverIndex Індекс сховища на сервері
+     * @return Локальний індекс сховища або -1, якщо сховище невідоме клієнту
+     */
+    public static int toLocal(StorageType type, int serverIndex) {
+        int[][] mapping = serverToLocal;
+        if (mapping == null) return serverIndex;
+        int[] typeMapping = mapping[type.ordinal()];
+        return serverIndex < typeMapping.length ? typeMapping[serverIndex] : -1;
+    }
+}
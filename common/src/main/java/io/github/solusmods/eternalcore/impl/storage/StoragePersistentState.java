@@ -1,14 +1,40 @@
 package io.github.solusmods.eternalcore.impl.storage;
 
+import io.github.solusmods.eternalcore.EternalCore;
 import net.minecraft.core.HolderLookup;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtUtils;
 import net.minecraft.util.datafix.DataFixTypes;
 import net.minecraft.world.level.saveddata.SavedData;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Збережені дані світу, що містять {@link CombinedStorage} сховищ світу.
+ * <p>
+ * Файл перезаписується лише тоді, коли сховища світу змінилися з моменту попереднього збереження,
+ * що визначається за {@link CombinedStorage#getPersistGeneration()}. Запис виконується у тимчасовий
+ * файл, який потім атомарно замінює попередній, тож перерване збереження не пошкоджує дані.
+ * </p>
+ * <p>
+ * На основному потоці створюється лише знімок сховищ ({@link CombinedStorage#snapshot()}).
+ * Побудова NBT, його стиснення та запис у файл виконуються потоком {@link StorageIO}.
+ * </p>
+ */
 public class StoragePersistentState extends SavedData {
     public static final ThreadLocal<Boolean> LOADING = ThreadLocal.withInitial(() -> false);
     private final CombinedStorage storage;
+    /**
+     * Значення {@link CombinedStorage#getPersistGeneration()} на момент останнього збереження або завантаження
+     */
+    private volatile long savedGeneration = -1;
 
     public StoragePersistentState(CombinedStorage storage) {
         this.storage = storage;
@@ -25,16 +51,52 @@ public class StoragePersistentState extends SavedData {
     public static StoragePersistentState fromNBT(CombinedStorage storage, CompoundTag tag) {
         StoragePersistentState state = new StoragePersistentState(storage);
         state.storage.handleUpdatePacket(tag);
+        state.savedGeneration = storage.getPersistGeneration();
         return state;
     }
 
     @Override
     public boolean isDirty() {
-        return true;
+        return super.isDirty() || this.storage.getPersistGeneration() != this.savedGeneration;
     }
 
     @Override
     public @NotNull CompoundTag save(CompoundTag compoundTag, HolderLookup.Provider provider) {
+        this.savedGeneration = this.storage.getPersistGeneration();
         return this.storage.toNBT();
     }
+
+    @Override
+    public void save(File file, HolderLookup.Provider provider) {
+        if (!this.isDirty()) return;
+        this.savedGeneration = this.storage.getPersistGeneration();
+        CombinedStorage.Snapshot snapshot = this.storage.snapshot();
+        this.setDirty(false);
+        StorageIO.execute(() -> this.write(file, snapshot));
+    }
+
+    private void write(File file, CombinedStorage.Snapshot snapshot) {
+        CompoundTag tag = new CompoundTag();
+        tag.put("data", snapshot.toNBT());
+        NbtUtils.addCurrentDataVersion(tag);
+
+        Path path = file.toPath();
+        try {
+            Path tempPath = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            try {
+                NbtIo.writeCompressed(tag, tempPath);
+                try {
+                    Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+        } catch (IOException e) {
+            EternalCore.LOG.error("Could not save world storage data {}", file, e);
+            // Write again on the next save
+            this.savedGeneration = -1;
+        }
+    }
 }
@@ -1,30 +1,144 @@
 package io.github.solusmods.eternalcore.impl.storage;
 
-import com.mojang.datafixers.util.Pair;
+import io.github.solusmods.eternalcore.EternalCore;
 import io.github.solusmods.eternalcore.api.storage.AbstractStorage;
 import io.github.solusmods.eternalcore.api.storage.StorageEvents;
 import io.github.solusmods.eternalcore.api.storage.StorageHolder;
 import io.github.solusmods.eternalcore.api.storage.StorageKey;
+import io.github.solusmods.eternalcore.api.storage.StorageType;
+import io.github.solusmods.eternalcore.api.storage.StorageVisibility;
+import io.github.solusmods.eternalcore.api.storage.SyncPolicy;
 import net.minecraft.resources.ResourceLocation;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.function.Predicate;
 
 /**
  * Внутрішня реалізація реєстру сховищ для певного типу власника.
  * <p>
  * Ця приватна внутрішня реалізація керує реєстрацією та приєднанням сховищ
- * для конкретного типу власника (сутність, чанк або світ).
+ * для конкретного типу власника (сутність, чанк або світ). Кожне зареєстроване сховище
+ * отримує щільний порядковий індекс, за яким {@link CombinedStorage} зберігає його у масиві.
+ * </p>
+ * <p>
+ * Предикати приєднання обчислюються один раз для кожного ключа плану (наприклад, типу сутності
+ * або виміру) окремо для клієнтської та серверної сторони. Результат кешується як {@link AttachPlan},
+ * який потім лише копіюється у нових власників. Тому предикати приєднання повинні залежати
+ * лише від ключа плану та сторони, а не від стану конкретного власника.
+ * </p>
+ * <p>
+ * Після завершення реєстрації реєстр заморожується ({@link #freeze()}): записи компілюються у незмінні
+ * масиви фабрик, предикатів та політик за індексом, якими користуються шляхи приєднання та створення сховищ.
+ * Реєстрація після заморожування не дозволяється.
  * </p>
  *
  * @param <T> Тип власника сховища
  */
 public class StorageRegistryImpl<T extends StorageHolder> implements StorageEvents.StorageRegistry<T> {
     /**
-     * Мапа, що зберігає зареєстровані фабрики сховищ з предикатами перевірки
+     * Мапа ідентифікаторів на зареєстровані записи. Використовується лише для серіалізації.
+     * Після заморожування замінюється незмінною копією.
+     */
+    private Map<ResourceLocation, Entry<T>> registry = new HashMap<>();
+
+    /**
+     * Записи, зареєстровані до заморожування, впорядковані за індексом сховища
+     */
+    private final List<Entry<T>> pending = new ArrayList<>();
+
+    /**
+     * Чи заморожено реєстр
      */
-    public final Map<ResourceLocation, Pair<Predicate<T>, StorageEvents.StorageFactory<T, ?>>> registry = new HashMap<>();
+    private volatile boolean frozen = false;
+
+    /**
+     * Зареєстровані записи, впорядковані за індексом сховища. Заповнюється при заморожуванні.
+     */
+    @SuppressWarnings("unchecked")
+    private Entry<T>[] entries = new Entry[0];
+
+    /**
+     * Фабрики сховищ за індексом
+     */
+    @SuppressWarnings("unchecked")
+    private StorageEvents.StorageFactory<T, ?>[] factories = new StorageEvents.StorageFactory[0];
+
+    /**
+     * Предикати приєднання сховищ за індексом
+     */
+    @SuppressWarnings("unchecked")
+    private Predicate<T>[] attachChecks = new Predicate[0];
+
+    /**
+     * Політики синхронізації сховищ за індексом
+     */
+    private SyncPolicy[] syncPolicies = new SyncPolicy[0];
+
+    /**
+     * Чи є сховище з відповідним індексом лінивим
+     */
+    private boolean[] lazy = new boolean[0];
+
+    /**
+     * Тип власників, для яких працює цей реєстр
+     */
+    private final StorageType storageType;
+
+    /**
+     * Функція, що повертає ключ плану приєднання для власника
+     */
+    private final Function<T, Object> planKey;
+
+    /**
+     * Предикат, що визначає, чи належить власник клієнтській стороні
+     */
+    private final Predicate<T> clientSide;
+
+    /**
+     * Кешовані плани приєднання для серверних власників
+     */
+    private final Map<Object, AttachPlan> serverPlans = new ConcurrentHashMap<>();
+
+    /**
+     * Кешовані плани приєднання для клієнтських власників
+     */
+    private final Map<Object, AttachPlan> clientPlans = new ConcurrentHashMap<>();
+
+    /**
+     * Індекси сховищ, які отримує власник: усі, крім {@link StorageVisibility#SERVER_ONLY}
+     */
+    private final BitSet ownerSlots = new BitSet();
+
+    /**
+     * Індекси сховищ, які отримують гравці, що відстежують власника
+     */
+    private final BitSet trackingSlots = new BitSet();
+
+    /**
+     * Індекси сховищ, які отримують усі гравці виміру
+     */
+    private final BitSet dimensionSlots = new BitSet();
+
+    /**
+     * Створює реєстр сховищ для вказаного типу власника.
+     *
+     * @param storageType Тип власників цього реєстру
+     * @param planKey     Функція, що повертає ключ, за яким кешуються результати предикатів приєднання
+     * @param clientSide  Предикат, що визначає, чи належить власник клієнтській стороні
+     */
+    public StorageRegistryImpl(StorageType storageType, Function<T, Object> planKey, Predicate<T> clientSide) {
+        this.storageType = storageType;
+        this.planKey = planKey;
+        this.clientSide = clientSide;
+    }
 
     /**
      * Реєструє новий тип сховища для власників даного типу.
@@ -38,27 +152,312 @@ public class StorageRegistryImpl<T extends StorageHolder> implements StorageEven
      */
     @Override
     public <S extends AbstractStorage> StorageKey<S> register(ResourceLocation id, Class<S> storageClass, Predicate<T> attachCheck, StorageEvents.StorageFactory<T, S> factory) {
+        return this.register(id, storageClass, attachCheck, factory, false, SyncPolicy.IMMEDIATE);
+    }
+
+    /**
+     * Реєструє новий тип сховища, екземпляр якого створюється лише при першому зверненні.
+     *
+     * @param id           Ідентифікатор сховища
+     * @param storageClass Клас сховища
+     * @param attachCheck  Предикат, що перевіряє, чи можна приєднувати сховище
+     * @param factory      Фабрика для створення екземплярів сховища
+     * @param <S>          Тип сховища
+     * @return Ключ для доступу до зареєстрованого сховища
+     */
+    @Override
+    public <S extends AbstractStorage> StorageKey<S> registerLazy(ResourceLocation id, Class<S> storageClass, Predicate<T> attachCheck, StorageEvents.StorageFactory<T, S> factory) {
+        return this.register(id, storageClass, attachCheck, factory, true, SyncPolicy.IMMEDIATE);
+    }
+
+    /**
+     * Реєструє новий тип сховища з власною політикою синхронізації.
+     *
+     * @param id           Ідентифікатор сховища
+     * @param storageClass Клас сховища
+     * @param attachCheck  Предикат, що перевіряє, чи потрібно приєднувати сховище
+     * @param factory      Фабрика для створення екземплярів сховища
+     * @param syncPolicy   Політика синхронізації змін сховища
+     * @param <S>          Тип сховища
+     * @return Ключ для доступу до зареєстрованого сховища
+     */
+    @Override
+    public <S extends AbstractStorage> StorageKey<S> register(ResourceLocation id, Class<S> storageClass, Predicate<T> attachCheck, StorageEvents.StorageFactory<T, S> factory, SyncPolicy syncPolicy) {
+        return this.register(id, storageClass, attachCheck, factory, false, syncPolicy);
+    }
+
+    /**
+     * Реєструє новий тип лінивого сховища з власною політикою синхронізації.
+     *
+     * @param id           Ідентифікатор сховища
+     * @param storageClass Клас сховища
+     * @param attachCheck  Предикат, що перевіряє, чи можна приєднувати сховище
+     * @param factory      Фабрика для створення екземплярів сховища
+     * @param syncPolicy   Політика синхронізації змін сховища
+     * @param <S>          Тип сховища
+     * @return Ключ для доступу до зареєстрованого сховища
+     */
+    @Override
+    public <S extends AbstractStorage> StorageKey<S> registerLazy(ResourceLocation id, Class<S> storageClass, Predicate<T> attachCheck, StorageEvents.StorageFactory<T, S> factory, SyncPolicy syncPolicy) {
+        return this.register(id, storageClass, attachCheck, factory, true, syncPolicy);
+    }
+
+    private synchronized <S extends AbstractStorage> StorageKey<S> register(ResourceLocation id, Class<S> storageClass, Predicate<T> attachCheck, StorageEvents.StorageFactory<T, S> factory, boolean lazy, SyncPolicy syncPolicy) {
+        if (this.frozen) {
+            throw new IllegalStateException("Cannot register " + this.storageType + " storage " + id + ": storage registry is already frozen");
+        }
         if (this.registry.containsKey(id)) {
             throw new IllegalStateException("Storage with id " + id + " is already registered");
         }
-        this.registry.put(id, Pair.of(attachCheck, factory));
-        return new StorageKey<>(id, storageClass);
+        StorageKey<S> key = new StorageKey<>(id, storageClass, this.storageType, this.pending.size());
+        Entry<T> entry = new Entry<>(key, attachCheck, factory, lazy, syncPolicy);
+        this.pending.add(entry);
+        this.registry.put(id, entry);
+        switch (syncPolicy.visibility()) {
+            case DIMENSION -> {
+                this.dimensionSlots.set(key.index());
+                this.trackingSlots.set(key.index());
+                this.ownerSlots.set(key.index());
+            }
+            case TRACKING -> {
+                this.trackingSlots.set(key.index());
+                this.ownerSlots.set(key.index());
+            }
+            case OWNER_ONLY -> this.ownerSlots.set(key.index());
+            case SERVER_ONLY -> {
+            }
+        }
+        // Plans compiled before this registration no longer cover every storage
+        this.serverPlans.clear();
+        this.clientPlans.clear();
+        return key;
+    }
+
+    /**
+     * Заморожує реєстр, компілюючи зареєстровані записи у незмінні масиви за індексом.
+     * <p>
+     * Після виклику реєстрація нових сховищ призводить до {@link IllegalStateException}.
+     * Повторний виклик нічого не робить.
+     * </p>
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void freeze() {
+        if (this.frozen) return;
+        int size = this.pending.size();
+        Entry<T>[] entries = this.pending.toArray(new Entry[0]);
+        StorageEvents.StorageFactory<T, ?>[] factories = new StorageEvents.StorageFactory[size];
+        Predicate<T>[] attachChecks = new Predicate[size];
+        SyncPolicy[] syncPolicies = new SyncPolicy[size];
+        boolean[] lazy = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            factories[i] = entries[i].factory();
+            attachChecks[i] = entries[i].attachCheck();
+            syncPolicies[i] = entries[i].syncPolicy();
+            lazy[i] = entries[i].lazy();
+        }
+        this.entries = entries;
+        this.factories = factories;
+        this.attachChecks = attachChecks;
+        this.syncPolicies = syncPolicies;
+        this.lazy = lazy;
+        this.registry = Map.copyOf(this.registry);
+        this.pending.clear();
+        this.serverPlans.clear();
+        this.clientPlans.clear();
+        this.frozen = true;
+        EternalCore.LOG.debug("Froze {} storage registry with {} storages", this.storageType, size);
     }
 
     /**
      * Приєднує всі необхідні сховища до цільового власника.
      * <p>
-     * Перевіряє кожне зареєстроване сховище і, якщо предикат повертає true,
-     * створює та приєднує відповідне сховище до власника.
+     * Використовує кешований план приєднання для ключа власника: сховища, дозволені планом,
+     * створюються та приєднуються до власника. Ліниві сховища лише позначаються як дозволені;
+     * їхні екземпляри створює {@link CombinedStorage} при першому зверненні.
      * </p>
      *
      * @param target Власник, до якого приєднуються сховища
      */
     public void attach(T target) {
-        this.registry.forEach((id, checkAndFactory) -> {
-            if (!checkAndFactory.getFirst().test(target)) return;
-            AbstractStorage storage = checkAndFactory.getSecond().create(target);
-            target.eternalCore$attachStorage(id, storage);
-        });
+        AttachPlan plan = this.getPlan(target);
+        CombinedStorage combinedStorage = target.eternalCore$getCombinedStorage();
+        for (int index : plan.eager()) {
+            combinedStorage.set(index, this.factories[index].create(target));
+        }
+        combinedStorage.markLazy(plan.lazy());
+    }
+
+    /**
+     * Повертає план приєднання для власника, обчислюючи його при першому зверненні.
+     *
+     * @param target Власник сховища
+     * @return План приєднання
+     */
+    private AttachPlan getPlan(T target) {
+        Object key = this.planKey.apply(target);
+        if (key == null) return this.compilePlan(target);
+        Map<Object, AttachPlan> plans = this.clientSide.test(target) ? this.clientPlans : this.serverPlans;
+        AttachPlan plan = plans.get(key);
+        if (plan == null) {
+            plan = this.compilePlan(target);
+            plans.putIfAbsent(key, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Обчислює план приєднання, перевіряючи предикати всіх зареєстрованих сховищ.
+     *
+     * @param target Власник, для якого перевіряються предикати
+     * @return План приєднання
+     */
+    private AttachPlan compilePlan(T target) {
+        Predicate<T>[] attachChecks = this.attachChecks;
+        int[] eager = new int[attachChecks.length];
+        int eagerCount = 0;
+        BitSet lazy = new BitSet();
+        for (int i = 0; i < attachChecks.length; i++) {
+            if (!attachChecks[i].test(target)) continue;
+            if (this.lazy[i]) {
+                lazy.set(i);
+            } else {
+                eager[eagerCount++] = i;
+            }
+        }
+        return new AttachPlan(Arrays.copyOf(eager, eagerCount), lazy);
+    }
+
+    /**
+     * Створює екземпляр сховища із вказаним індексом для власника.
+     *
+     * @param index  Індекс сховища
+     * @param holder Власник сховища
+     * @return Новий екземпляр сховища
+     */
+    @SuppressWarnings("unchecked")
+    public AbstractStorage create(int index, StorageHolder holder) {
+        return this.factories[index].create((T) holder);
+    }
+
+    /**
+     * Перевіряє, чи належить власник клієнтській стороні.
+     *
+     * @param holder Власник сховища
+     * @return true, якщо власник існує на клієнті
+     */
+    @SuppressWarnings("unchecked")
+    public boolean isClientSide(StorageHolder holder) {
+        return this.clientSide.test((T) holder);
+    }
+
+    /**
+     * @return Кількість зареєстрованих сховищ
+     */
+    public int size() {
+        return this.entries.length;
+    }
+
+    /**
+     * Повертає індекси сховищ, які надсилаються власнику. Результат не повинен змінюватися.
+     *
+     * @return Індекси сховищ
+     */
+    public BitSet getOwnerSlots() {
+        return this.ownerSlots;
+    }
+
+    /**
+     * Повертає індекси сховищ, які надсилаються гравцям, що відстежують власника.
+     * Результат не повинен змінюватися.
+     *
+     * @return Індекси сховищ
+     */
+    public BitSet getTrackingSlots() {
+        return this.trackingSlots;
+    }
+
+    /**
+     * Повертає індекси сховищ, які надсилаються всім гравцям виміру. Результат не повинен змінюватися.
+     *
+     * @return Індекси сховищ
+     */
+    public BitSet getDimensionSlots() {
+        return this.dimensionSlots;
+    }
+
+    /**
+     * Отримує запис за індексом сховища.
+     *
+     * @param index Індекс сховища
+     * @return Зареєстрований запис
+     */
+    public Entry<T> getEntry(int index) {
+        return this.entries[index];
+    }
+
+    /**
+     * Повертає політику синхронізації сховища за його індексом.
+     *
+     * @param index Індекс сховища
+     * @return Політика синхронізації
+     */
+    public SyncPolicy getSyncPolicy(int index) {
+        return this.syncPolicies[index];
+    }
+
+    /**
+     * Перевіряє, чи є сховище з указаним індексом лінивим.
+     *
+     * @param index Індекс сховища
+     * @return true, якщо екземпляр сховища створюється лише при першому зверненні
+     */
+    public boolean isLazy(int index) {
+        return this.lazy[index];
+    }
+
+    /**
+     * Отримує запис за ідентифікатором сховища.
+     *
+     * @param id Ідентифікатор сховища
+     * @return Зареєстрований запис або null, якщо сховище не зареєстровано
+     */
+    @Nullable
+    public Entry<T> getEntry(ResourceLocation id) {
+        return this.registry.get(id);
+    }
+
+    /**
+     * Повертає індекс сховища за його ідентифікатором.
+     *
+     * @param id Ідентифікатор сховища
+     * @return Індекс сховища або -1, якщо сховище не зареєстровано
+     */
+    public int indexOf(ResourceLocation id) {
+        Entry<T> entry = this.registry.get(id);
+        return entry == null ? -1 : entry.key().index();
+    }
+
+    /**
+     * Зареєстрований запис сховища.
+     *
+     * @param key         Ключ сховища з його індексом
+     * @param attachCheck Предикат, що перевіряє, чи потрібно приєднувати сховище
+     * @param factory     Фабрика для створення екземплярів сховища
+     * @param lazy        Чи створюється сховище лише при першому зверненні
+     * @param syncPolicy  Політика синхронізації змін сховища
+     */
+    public record Entry<T extends StorageHolder>(StorageKey<?> key, Predicate<T> attachCheck, StorageEvents.StorageFactory<T, ?> factory, boolean lazy, SyncPolicy syncPolicy) {
+    }
+
+    /**
+     * Попередньо обчислений план приєднання сховищ.
+     * <p>
+     * План спільний для всіх власників з однаковим ключем і не повинен змінюватися.
+     * </p>
+     *
+     * @param eager Індекси сховищ, які створюються одразу
+     * @param lazy  Індекси лінивих сховищ, дозволених для власника
+     */
+    public record AttachPlan(int[] eager, BitSet lazy) {
     }
 }
@@ -1,17 +1,25 @@
 package io.github.solusmods.eternalcore.impl.storage.network;
 
+import dev.architectury.platform.Platform;
 import io.github.solusmods.eternalcore.api.network.util.NetworkUtils;
+import io.github.solusmods.eternalcore.impl.storage.network.s2c.ClientAccess;
 import io.github.solusmods.eternalcore.impl.storage.network.s2c.SyncChunkStoragePayload;
 import io.github.solusmods.eternalcore.impl.storage.network.s2c.SyncEntityStoragePayload;
+import io.github.solusmods.eternalcore.impl.storage.network.s2c.SyncStorageBundlePayload;
+import io.github.solusmods.eternalcore.impl.storage.network.s2c.SyncStoragePalettePayload;
 import io.github.solusmods.eternalcore.impl.storage.network.s2c.SyncWorldStoragePayload;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import net.fabricmc.api.EnvType;
 
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class StorageNetwork {
     public static void init() {
+        NetworkUtils.registerS2CPayload(SyncStoragePalettePayload.TYPE, SyncStoragePalettePayload.STREAM_CODEC, SyncStoragePalettePayload::handle);
         NetworkUtils.registerS2CPayload(SyncChunkStoragePayload.TYPE, SyncChunkStoragePayload.STREAM_CODEC, SyncChunkStoragePayload::handle);
         NetworkUtils.registerS2CPayload(SyncEntityStoragePayload.TYPE, SyncEntityStoragePayload.STREAM_CODEC, SyncEntityStoragePayload::handle);
         NetworkUtils.registerS2CPayload(SyncWorldStoragePayload.TYPE, SyncWorldStoragePayload.STREAM_CODEC, SyncWorldStoragePayload::handle);
+        NetworkUtils.registerS2CPayload(SyncStorageBundlePayload.TYPE, SyncStorageBundlePayload.STREAM_CODEC, SyncStorageBundlePayload::handle);
+        if (Platform.getEnv() == EnvType.CLIENT) ClientAccess.init();
     }
 }
@@ -1,8 +1,9 @@
 package io.github.solusmods.eternalcore.impl.storage.network.s2c;
 
 
+import dev.architectury.event.events.client.ClientPlayerEvent;
 import io.github.solusmods.eternalcore.api.storage.StorageHolder;
-import io.github.solusmods.eternalcore.impl.storage.CombinedStorage;
+import io.github.solusmods.eternalcore.impl.storage.StoragePalette;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import net.minecraft.client.Minecraft;
@@ -14,6 +15,23 @@ import org.jetbrains.annotations.Nullable;
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class ClientAccess {
 
+    /**
+     * Реєструє клієнтські обробники подій мережі сховищ.
+     */
+    public static void init() {
+        // The next server sends its own palette after joining
+        ClientPlayerEvent.CLIENT_PLAYER_QUIT.register(player -> StoragePalette.reset());
+    }
+
+    static void handle(StorageSyncPayload packet) {
+        if (packet instanceof SyncEntityStoragePayload entityPacket) {
+            handle(entityPacket);
+        } else if (packet instanceof SyncChunkStoragePayload chunkPacket) {
+            handle(chunkPacket);
+        } else if (packet instanceof SyncWorldStoragePayload worldPacket) {
+            handle(worldPacket);
+        }
+    }
 
     static void handle(SyncEntityStoragePayload packet) {
         Entity entity = getEntityFromId(packet.entityId());
@@ -48,11 +66,9 @@ public class ClientAccess {
 
     static void handleUpdatePacket(StorageHolder holder, StorageSyncPayload packet) {
         if (packet.isUpdate()) {
-            holder.eternalCore$getCombinedStorage().handleUpdatePacket(packet.storageTag());
+            holder.eternalCore$getCombinedStorage().handleUpdatePacket(packet.storageData());
         } else {
-            CombinedStorage updatedStorage = new CombinedStorage(holder);
-            updatedStorage.load(packet.storageTag());
-            holder.eternalCore$setCombinedStorage(updatedStorage);
+            holder.eternalCore$getCombinedStorage().loadSyncPacket(packet.storageData());
         }
     }
 }
@@ -1,11 +1,21 @@
 package io.github.solusmods.eternalcore.impl.storage.network.s2c;
 
 
-import net.minecraft.nbt.CompoundTag;
+import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
 
 public interface StorageSyncPayload extends CustomPacketPayload {
     boolean isUpdate();
 
-    CompoundTag storageTag();
+    byte[] storageData();
+
+    void encode(FriendlyByteBuf buf);
+
+    /**
+     * Upper bound of the encoded size inside a {@link SyncStorageBundlePayload}:
+     * the storage data plus the kind byte, update flag, holder reference and data length.
+     */
+    default int encodedSizeEstimate() {
+        return storageData().length + 16;
+    }
 }
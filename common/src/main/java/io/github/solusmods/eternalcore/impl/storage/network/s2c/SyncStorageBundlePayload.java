@@ -0,0 +1,85 @@
+package io.github.solusmods.eternalcore.impl.storage.network.s2c;
+
+
+import dev.architectury.networking.NetworkManager;
+import dev.architectury.utils.Env;
+import io.github.solusmods.eternalcore.EternalCore;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Пакет, що об'єднує всі оновлення сховищ сутностей, чанків та світу,
+ * накопичені для одного гравця протягом серверного тіку.
+ * <p>
+ * Кожен вкладений пакет записується з байтом типу, після чого йдуть його власні дані.
+ * Клієнт застосовує вкладені пакети в тому порядку, в якому їх було додано на сервері.
+ * </p>
+ * <p>
+ * Розмір одного пакета обмежено {@link #MAX_BUNDLE_SIZE}, щоб не перевищити ліміт розміру
+ * користувацьких пакетів клієнта (1 МіБ). Оновлення, що не вміщуються, надсилаються кількома пакетами.
+ * </p>
+ */
+public record SyncStorageBundlePayload(
+        List<StorageSyncPayload> payloads
+) implements CustomPacketPayload {
+    public static final Type<SyncStorageBundlePayload> TYPE = new Type<>(EternalCore.create("sync_storage_bundle"));
+    public static final StreamCodec<FriendlyByteBuf, SyncStorageBundlePayload> STREAM_CODEC = CustomPacketPayload.codec(SyncStorageBundlePayload::encode, SyncStorageBundlePayload::new);
+
+    /**
+     * Максимальний орієнтовний розмір вкладених пакетів в одному пакеті, з запасом до ліміту клієнта
+     */
+    public static final int MAX_BUNDLE_SIZE = 512 * 1024;
+
+    private static final byte ENTITY = 0;
+    private static final byte CHUNK = 1;
+    private static final byte WORLD = 2;
+
+    public SyncStorageBundlePayload(FriendlyByteBuf buf) {
+        this(readPayloads(buf));
+    }
+
+    private static List<StorageSyncPayload> readPayloads(FriendlyByteBuf buf) {
+        int size = buf.readVarInt();
+        List<StorageSyncPayload> payloads = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            byte kind = buf.readByte();
+            payloads.add(switch (kind) {
+                case ENTITY -> new SyncEntityStoragePayload(buf);
+                case CHUNK -> new SyncChunkStoragePayload(buf);
+                case WORLD -> new SyncWorldStoragePayload(buf);
+                default -> throw new IllegalStateException("Unknown storage sync payload kind " + kind);
+            });
+        }
+        return payloads;
+    }
+
+    public void encode(FriendlyByteBuf buf) {
+        buf.writeVarInt(payloads.size());
+        for (StorageSyncPayload payload : payloads) {
+            if (payload instanceof SyncEntityStoragePayload) {
+                buf.writeByte(ENTITY);
+            } else if (payload instanceof SyncChunkStoragePayload) {
+                buf.writeByte(CHUNK);
+            } else if (payload instanceof SyncWorldStoragePayload) {
+                buf.writeByte(WORLD);
+            } else {
+                throw new IllegalStateException("Unknown storage sync payload " + payload.type().id());
+            }
+            payload.encode(buf);
+        }
+    }
+
+    public void handle(NetworkManager.PacketContext context) {
+        if (context.getEnvironment() != Env.CLIENT) return;
+        context.queue(() -> payloads.forEach(ClientAccess::handle));
+    }
+
+    @Override
+    public Type<SyncStorageBundlePayload> type() {
+        return TYPE;
+    }
+}
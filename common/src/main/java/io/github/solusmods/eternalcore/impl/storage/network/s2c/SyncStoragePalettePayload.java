@@ -0,0 +1,43 @@
+package io.github.solusmods.eternalcore.impl.storage.network.s2c;
+
+
+import dev.architectury.networking.NetworkManager;
+import dev.architectury.utils.Env;
+import io.github.solusmods.eternalcore.EternalCore;
+import io.github.solusmods.eternalcore.impl.storage.StoragePalette;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+
+import java.util.List;
+
+/**
+ * Пакет з палітрою ідентифікаторів сховищ сервера, який надсилається гравцю під час входу.
+ *
+ * @see StoragePalette
+ */
+public record SyncStoragePalettePayload(
+        List<List<ResourceLocation>> storageIds
+) implements CustomPacketPayload {
+    public static final Type<SyncStoragePalettePayload> TYPE = new Type<>(EternalCore.create("sync_storage_palette"));
+    public static final StreamCodec<FriendlyByteBuf, SyncStoragePalettePayload> STREAM_CODEC = CustomPacketPayload.codec(SyncStoragePalettePayload::encode, SyncStoragePalettePayload::new);
+
+    public SyncStoragePalettePayload(FriendlyByteBuf buf) {
+        this(buf.readList(b -> b.readList(FriendlyByteBuf::readResourceLocation)));
+    }
+
+    public void encode(FriendlyByteBuf buf) {
+        buf.writeCollection(storageIds, (b, ids) -> b.writeCollection(ids, FriendlyByteBuf::writeResourceLocation));
+    }
+
+    public void handle(NetworkManager.PacketContext context) {
+        if (context.getEnvironment() != Env.CLIENT) return;
+        context.queue(() -> StoragePalette.apply(storageIds));
+    }
+
+    @Override
+    public Type<SyncStoragePalettePayload> type() {
+        return TYPE;
+    }
+}
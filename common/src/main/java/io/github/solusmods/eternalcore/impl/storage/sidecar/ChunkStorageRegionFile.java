@@ -0,0 +1,219 @@
+package io.github.solusmods.eternalcore.impl.storage.sidecar;
+
+import net.minecraft.world.level.ChunkPos;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Файл регіону 32x32 чанків, що містить лише дані сховищ чанків EternalCore.
+ * <p>
+ * Файл починається із заголовка на 1024 записи. Кожен запис містить зміщення, довжину та місткість
+ * блоку даних чанка. Нові дані завжди записуються у вільний блок і скидаються на диск, і лише після цього
+ * запис заголовка перемикається на нього, тож збій посеред запису залишає попередні дані чанка цілими.
+ * </p>
+ * <p>
+ * Звільнені блоки повторно використовуються лише після {@link #flush()}: доки новий заголовок
+ * не скинуто на диск, заголовок на диску ще може посилатися на них.
+ * </p>
+ * <p>
+ * Запис з довжиною {@link #EMPTY_LENGTH} означає, що для чанка явно збережено порожні дані,
+ * на відміну від запису без даних, для якого дані шукаються в NBT чанка.
+ * </p>
+ */
+final class ChunkStorageRegionFile implements AutoCloseable {
+    /**
+     * Дані чанка, для якого явно збережено відсутність даних сховищ
+     */
+    static final byte[] EMPTY = new byte[0];
+
+    private static final int ENTRIES = 32 * 32;
+    private static final int ENTRY_BYTES = 3 * Integer.BYTES;
+    private static final int HEADER_BYTES = ENTRIES * ENTRY_BYTES;
+    /**
+     * Довжина запису заголовка, що позначає явно порожні дані
+     */
+    private static final int EMPTY_LENGTH = -1;
+    /**
+     * Місткість блоків округлюється до цього розміру, щоб зменшити фрагментацію вільного місця
+     */
+    private static final int BLOCK_ALIGNMENT = 256;
+
+    private final FileChannel channel;
+    /**
+     * Копія заголовка в пам'яті. Змінені записи одразу записуються у файл.
+     */
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    /**
+     * Вільні блоки за зміщенням
+     */
+    private final TreeMap<Integer, Integer> free = new TreeMap<>();
+    /**
+     * Звільнені блоки, на які ще може посилатися заголовок на диску, у вигляді пар {зміщення, місткість}
+     */
+    private final List<int[]> pendingFree = new ArrayList<>();
+    private int end;
+
+    ChunkStorageRegionFile(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        while (this.header.hasRemaining()) {
+            if (this.channel.read(this.header, this.header.position()) < 0) break;
+        }
+        this.header.clear();
+        if (this.channel.size() < HEADER_BYTES) {
+            this.channel.write(this.header.duplicate(), 0);
+        }
+        this.rebuildFreeSpace();
+    }
+
+    /**
+     * Відновлює список вільних блоків за блоками, на які посилається заголовок.
+     */
+    private void rebuildFreeSpace() throws IOException {
+        long size = this.channel.size();
+        List<int[]> used = new ArrayList<>();
+        for (int entry = 0; entry < HEADER_BYTES; entry += ENTRY_BYTES) {
+            int offset = this.header.getInt(entry);
+            int capacity = this.header.getInt(entry + 2 * Integer.BYTES);
+            if (capacity <= 0 || offset < HEADER_BYTES || (long) offset + capacity > size) continue;
+            used.add(new int[]{offset, capacity});
+        }
+        used.sort(Comparator.comparingInt(extent -> extent[0]));
+        int position = HEADER_BYTES;
+        for (int[] extent : used) {
+            if (extent[0] > position) this.free.put(position, extent[0] - position);
+            position = Math.max(position, extent[0] + extent[1]);
+        }
+        this.end = position;
+    }
+
+    /**
+     * Читає дані сховищ чанка.
+     *
+     * @param pos Позиція чанка
+     * @return Дані чанка, {@link #EMPTY}, якщо збережено порожні дані, або null, якщо для чанка нічого не збережено
+     */
+    @Nullable
+    synchronized byte[] read(ChunkPos pos) throws IOException {
+        int entry = entryOffset(pos);
+        int offset = this.header.getInt(entry);
+        int length = this.header.getInt(entry + Integer.BYTES);
+        if (length == EMPTY_LENGTH) return EMPTY;
+        if (length <= 0) return null;
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer, (long) offset + buffer.position()) < 0) {
+                throw new EOFException("Chunk storage data of " + pos + " is truncated");
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Записує дані сховищ чанка у новий блок, скидає їх на диск і перемикає на нього запис заголовка.
+     *
+     * @param pos  Позиція чанка
+     * @param data Дані чанка або {@link #EMPTY}, щоб явно зберегти відсутність даних
+     */
+    synchronized void write(ChunkPos pos, byte[] data) throws IOException {
+        int entry = entryOffset(pos);
+        int oldOffset = this.header.getInt(entry);
+        int oldCapacity = this.header.getInt(entry + 2 * Integer.BYTES);
+
+        int offset = 0;
+        int capacity = 0;
+        if (data.length > 0) {
+            capacity = (data.length + BLOCK_ALIGNMENT - 1) / BLOCK_ALIGNMENT * BLOCK_ALIGNMENT;
+            offset = this.allocate(capacity);
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                this.channel.write(buffer, (long) offset + buffer.position());
+            }
+            // The data must reach the disk first, otherwise the header could be persisted pointing at unwritten space
+            this.channel.force(false);
+        }
+
+        // The header is only switched once the data is in place
+        this.header.putInt(entry, offset);
+        this.header.putInt(entry + Integer.BYTES, data.length > 0 ? data.length : EMPTY_LENGTH);
+        this.header.putInt(entry + 2 * Integer.BYTES, capacity);
+        ByteBuffer entryBuffer = this.header.slice(entry, ENTRY_BYTES);
+        while (entryBuffer.hasRemaining()) {
+            this.channel.write(entryBuffer, (long) entry + entryBuffer.position());
+        }
+        if (oldCapacity > 0) this.pendingFree.add(new int[]{oldOffset, oldCapacity});
+    }
+
+    /**
+     * Знаходить вільний блок вказаної місткості, за потреби розширюючи файл.
+     *
+     * @param capacity Місткість блоку
+     * @return Зміщення блоку
+     */
+    private int allocate(int capacity) {
+        for (Map.Entry<Integer, Integer> extent : this.free.entrySet()) {
+            if (extent.getValue() < capacity) continue;
+            int offset = extent.getKey();
+            this.free.remove(offset);
+            if (extent.getValue() > capacity) this.free.put(offset + capacity, extent.getValue() - capacity);
+            return offset;
+        }
+        int offset = this.end;
+        this.end = Math.addExact(this.end, capacity);
+        return offset;
+    }
+
+    /**
+     * Повертає блок до списку вільних, об'єднуючи його із сусідніми.
+     *
+     * @param offset   Зміщення блоку
+     * @param capacity Місткість блоку
+     */
+    private void release(int offset, int capacity) {
+        Map.Entry<Integer, Integer> previous = this.free.floorEntry(offset);
+        if (previous != null && previous.getKey() + previous.getValue() == offset) {
+            this.free.remove(previous.getKey());
+            offset = previous.getKey();
+            capacity += previous.getValue();
+        }
+        Integer next = this.free.remove(offset + capacity);
+        if (next != null) capacity += next;
+        if (offset + capacity == this.end) {
+            this.end = offset;
+        } else {
+            this.free.put(offset, capacity);
+        }
+    }
+
+    /**
+     * Скидає записані дані та заголовок на диск і звільняє блоки, на які він більше не посилається.
+     */
+    synchronized void flush() throws IOException {
+        this.channel.force(true);
+        for (int[] extent : this.pendingFree) {
+            this.release(extent[0], extent[1]);
+        }
+        this.pendingFree.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.flush();
+        this.channel.close();
+    }
+
+    private static int entryOffset(ChunkPos pos) {
+        return (pos.getRegionLocalX() + pos.getRegionLocalZ() * 32) * ENTRY_BYTES;
+    }
+}
@@ -0,0 +1,232 @@
+package io.github.solusmods.eternalcore.impl.storage.sidecar;
+
+import dev.architectury.event.events.common.LifecycleEvent;
+import io.github.solusmods.eternalcore.EternalCore;
+import io.github.solusmods.eternalcore.impl.storage.CombinedStorage;
+import io.github.solusmods.eternalcore.impl.storage.StorageIO;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.dimension.DimensionType;
+import net.minecraft.world.level.storage.LevelResource;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Окреме сховище даних сховищ чанків поза NBT ванільних чанків.
+ * <p>
+ * Вмикається системною властивістю {@code -Deternalcore.chunkStorageSidecar=true}. Тоді дані сховищ
+ * чанків зберігаються у власних файлах регіонів ({@link ChunkStorageRegionFile}) у теці
+ * {@code eternalcore} виміру, а зміна сховища чанка не позначає сам чанк як незбережений,
+ * тож блоки чанка не перезаписуються. Змінені чанки записуються під час збереження світу
+ * та при вивантаженні чанка.
+ * </p>
+ * <p>
+ * Якщо для чанка ще немає даних у файлі регіону, вони читаються з NBT чанка, як і раніше,
+ * і переносяться до окремого сховища при наступному збереженні. Сховища без даних записуються
+ * як явно порожній запис, тож застарілі дані з NBT перенесеного чанка більше не читаються.
+ * </p>
+ * <p>
+ * На основному потоці створюється лише знімок сховищ ({@link CombinedStorage#snapshot()}).
+ * Побудова NBT, його серіалізація та запис у файл регіону виконуються потоком {@link StorageIO}.
+ * </p>
+ */
+public final class ChunkStorageSidecar {
+    /**
+     * Чи увімкнено окреме сховище даних чанків
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("eternalcore.chunkStorageSidecar");
+
+    private static final Map<ResourceKey<Level>, ChunkStorageSidecar> SIDECARS = new ConcurrentHashMap<>();
+
+    private final Path directory;
+    private final Long2ObjectMap<ChunkStorageRegionFile> regions = new Long2ObjectOpenHashMap<>();
+    /**
+     * Знімки, які ще не записані у файл регіону, за {@link ChunkPos#toLong()}
+     */
+    private final Map<Long, CombinedStorage.Snapshot> pending = new ConcurrentHashMap<>();
+    /**
+     * Чанки, сховища яких змінилися з моменту останнього запису, за {@link ChunkPos#toLong()}
+     */
+    private final Long2ObjectMap<LevelChunk> dirtyChunks = new Long2ObjectOpenHashMap<>();
+
+    private ChunkStorageSidecar(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Реєструє запис змінених чанків під час збереження та вивантаження світу.
+     */
+    public static void init() {
+        if (!ENABLED) return;
+        LifecycleEvent.SERVER_LEVEL_SAVE.register(level -> get(level).save());
+        LifecycleEvent.SERVER_LEVEL_UNLOAD.register(level -> {
+            ChunkStorageSidecar sidecar = SIDECARS.remove(level.dimension());
+            if (sidecar != null) sidecar.close();
+        });
+    }
+
+    /**
+     * Повертає окреме сховище для виміру, створюючи його за потреби.
+     *
+     * @param level Серверний вимір
+     * @return Окреме сховище виміру
+     */
+    public static ChunkStorageSidecar get(ServerLevel level) {
+        return SIDECARS.computeIfAbsent(level.dimension(), dimension -> new ChunkStorageSidecar(
+                DimensionType.getStorageFolder(dimension, level.getServer().getWorldPath(LevelResource.ROOT)).resolve(EternalCore.MOD_ID)));
+    }
+
+    /**
+     * Позначає, що сховища чанка потрібно зберегти.
+     * <p>
+     * Якщо окреме сховище вимкнено, чанк позначається як незбережений, і дані записуються разом з ним.
+     * </p>
+     *
+     * @param chunk Чанк зі зміненими сховищами
+     */
+    public static void markUnsaved(LevelChunk chunk) {
+        if (ENABLED && chunk.getLevel() instanceof ServerLevel level) {
+            get(level).markDirty(chunk);
+        } else {
+            chunk.setUnsaved(true);
+        }
+    }
+
+    /**
+     * Записує сховища чанка, що вивантажується, якщо вони змінилися.
+     *
+     * @param level Серверний вимір
+     * @param chunk Чанк, що вивантажується
+     */
+    public static void onChunkUnload(ServerLevel level, LevelChunk chunk) {
+        if (!ENABLED) return;
+        ChunkStorageSidecar sidecar = SIDECARS.get(level.dimension());
+        if (sidecar == null) return;
+        if (sidecar.dirtyChunks.remove(chunk.getPos().toLong()) != null) sidecar.write(chunk);
+    }
+
+    /**
+     * Позначає, що сховища чанка потрібно зберегти.
+     *
+     * @param chunk Чанк зі зміненими сховищами
+     */
+    public void markDirty(LevelChunk chunk) {
+        this.dirtyChunks.put(chunk.getPos().toLong(), chunk);
+    }
+
+    /**
+     * Читає збережені дані сховищ чанка.
+     *
+     * @param pos Позиція чанка
+     * @return Дані сховищ, порожній тег, якщо збережено сховища без даних, або null, якщо для чанка нічого не збережено
+     */
+    @Nullable
+    public CompoundTag read(ChunkPos pos) {
+        CombinedStorage.Snapshot snapshot = this.pending.get(pos.toLong());
+        if (snapshot != null) return snapshot.isDefault() ? new CompoundTag() : snapshot.toNBT();
+        try {
+            byte[] data = this.getRegion(pos).read(pos);
+            if (data == null) return null;
+            if (data.length == 0) return new CompoundTag();
+            return NbtIo.read(new DataInputStream(new ByteArrayInputStream(data)));
+        } catch (IOException e) {
+            EternalCore.LOG.error("Failed to read chunk storage data of {} from {}", pos, this.directory, e);
+            return null;
+        }
+    }
+
+    /**
+     * Записує всі змінені чанки та скидає файли регіонів на диск.
+     * <p>
+     * Знімки створюються одразу, а запис і скидання виконуються потоком вводу-виводу.
+     * </p>
+     */
+    public void save() {
+        for (LevelChunk chunk : this.dirtyChunks.values()) {
+            this.write(chunk);
+        }
+        this.dirtyChunks.clear();
+        StorageIO.execute(this::flush);
+    }
+
+    private void write(LevelChunk chunk) {
+        ChunkPos pos = chunk.getPos();
+        CombinedStorage.Snapshot snapshot = chunk.eternalCore$getCombinedStorage().snapshot();
+        this.pending.put(pos.toLong(), snapshot);
+        StorageIO.execute(() -> this.writeSnapshot(pos, snapshot));
+    }
+
+    private void writeSnapshot(ChunkPos pos, CombinedStorage.Snapshot snapshot) {
+        try {
+            byte[] data = ChunkStorageRegionFile.EMPTY;
+            if (!snapshot.isDefault()) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                NbtIo.write(snapshot.toNBT(), new DataOutputStream(bytes));
+                data = bytes.toByteArray();
+            }
+            this.getRegion(pos).write(pos, data);
+        } catch (IOException e) {
+            EternalCore.LOG.error("Failed to write chunk storage data of {} to {}", pos, this.directory, e);
+        } finally {
+            this.pending.remove(pos.toLong(), snapshot);
+        }
+    }
+
+    private void flush() {
+        synchronized (this.regions) {
+            for (ChunkStorageRegionFile region : this.regions.values()) {
+                try {
+                    region.flush();
+                } catch (IOException e) {
+                    EternalCore.LOG.error("Failed to flush chunk storage region in {}", this.directory, e);
+                }
+            }
+        }
+    }
+
+    private void close() {
+        this.save();
+        // Wait for every queued write so the level is fully saved once it is unloaded
+        StorageIO.executeAndWait(() -> {
+            synchronized (this.regions) {
+                for (ChunkStorageRegionFile region : this.regions.values()) {
+                    try {
+                        region.close();
+                    } catch (IOException e) {
+                        EternalCore.LOG.error("Failed to close chunk storage region in {}", this.directory, e);
+                    }
+                }
+                this.regions.clear();
+            }
+        });
+    }
+
+    private ChunkStorageRegionFile getRegion(ChunkPos pos) throws IOException {
+        long key = ChunkPos.asLong(pos.getRegionX(), pos.getRegionZ());
+        synchronized (this.regions) {
+            ChunkStorageRegionFile region = this.regions.get(key);
+            if (region == null) {
+                Files.createDirectories(this.directory);
+                region = new ChunkStorageRegionFile(this.directory.resolve("r." + pos.getRegionX() + "." + pos.getRegionZ() + ".ecr"));
+                this.regions.put(key, region);
+            }
+            return region;
+        }
+    }
+}
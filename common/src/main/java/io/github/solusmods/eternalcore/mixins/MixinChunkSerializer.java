@@ -2,7 +2,10 @@ package io.github.solusmods.eternalcore.mixins;
 
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import io.github.solusmods.eternalcore.impl.storage.CombinedStorage;
+import io.github.solusmods.eternalcore.impl.storage.sidecar.ChunkStorageSidecar;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.entity.ai.village.poi.PoiManager;
 import net.minecraft.world.level.ChunkPos;
@@ -24,9 +27,26 @@ public class MixinChunkSerializer {
     @Unique
     private static final String STORAGE_TAG = "eternalCoreStorage";
 
+    /**
+     * Runs on chunk loading worker threads. The chunk storage is still detached here,
+     * so it is only filled and gets published to the server thread in {@link LevelChunk#runPostLoad()}.
+     */
     @Inject(method = "read", at = @At("RETURN"))
     private static void onChunkRead(ServerLevel level, PoiManager poiManager, RegionStorageInfo regionStorageInfo, ChunkPos pos, CompoundTag tag, CallbackInfoReturnable<ProtoChunk> cir) {
         if (!(cir.getReturnValue() instanceof ImposterProtoChunk protoChunk)) return;
+        if (ChunkStorageSidecar.ENABLED) {
+            ChunkStorageSidecar sidecar = ChunkStorageSidecar.get(level);
+            CompoundTag storageTag = sidecar.read(pos);
+            if (storageTag != null) {
+                // An empty tag means the storages were saved without data, so the chunk NBT is stale
+                if (!storageTag.isEmpty()) protoChunk.getWrapped().eternalCore$getCombinedStorage().handleUpdatePacket(storageTag);
+                return;
+            }
+            // Move data saved inside the chunk to the sidecar once the chunk is published
+            if (tag.contains(STORAGE_TAG, Tag.TAG_COMPOUND)) protoChunk.getWrapped().eternalCore$getCombinedStorage().requestSave();
+        }
+        // Chunks with default storages are saved without storage data
+        if (!tag.contains(STORAGE_TAG, Tag.TAG_COMPOUND)) return;
         // Apply loaded data to initial storage
         protoChunk.getWrapped().eternalCore$getCombinedStorage().handleUpdatePacket(tag.getCompound(STORAGE_TAG));
     }
@@ -34,7 +54,11 @@ public class MixinChunkSerializer {
     @Inject(method = "write", at = @At("RETURN"))
     private static void onChunkWrite(ServerLevel level, ChunkAccess chunk, CallbackInfoReturnable<CompoundTag> cir) {
         if (!(chunk instanceof LevelChunk levelChunk)) return;
+        // Sidecar data is written separately from the chunk
+        if (ChunkStorageSidecar.ENABLED) return;
+        CombinedStorage storage = levelChunk.eternalCore$getCombinedStorage();
+        if (storage.isDefault()) return;
         CompoundTag tag = cir.getReturnValue();
-        tag.put(STORAGE_TAG, levelChunk.eternalCore$getCombinedStorage().toNBT());
+        tag.put(STORAGE_TAG, storage.toNBT());
     }
 }
@@ -16,20 +16,19 @@ import net.minecraft.world.level.Level;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.spongepowered.asm.mixin.Mixin;
-import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
+import java.util.function.Consumer;
+
 @Mixin(Entity.class)
 @SuppressWarnings("unchecked")
 public class MixinEntity implements StorageHolder {
     @Unique
     private static final String STORAGE_TAG_KEY = "eternalCoreStorage";
-    @Shadow
-    private Level level;
     @Unique
     private CombinedStorage eternalcore$storage;
 
@@ -41,7 +40,7 @@ public class MixinEntity implements StorageHolder {
     @Nullable
     @Override
     public <T extends AbstractStorage> T eternalCore$getStorage(StorageKey<T> storageKey) {
-        return (T) this.eternalcore$storage.get(storageKey.id());
+        return (T) this.eternalcore$storage.get(storageKey);
     }
 
     @Override
@@ -69,6 +68,16 @@ public class MixinEntity implements StorageHolder {
         return PlayerLookup.trackingAndSelf((Entity) (Object) this);
     }
 
+    @Override
+    public @Nullable ServerPlayer eternalCore$getOwningPlayer() {
+        return (Object) this instanceof ServerPlayer player ? player : null;
+    }
+
+    @Override
+    public void eternalCore$forEachTrackingPlayer(Consumer<ServerPlayer> consumer) {
+        PlayerLookup.forEachTrackingAndSelf((Entity) (Object) this, consumer);
+    }
+
     @Inject(method = "<init>", at = @At("RETURN"))
     void initStorage(EntityType<?> entityType, Level level, CallbackInfo ci) {
         // Create empty storage
@@ -88,16 +97,8 @@ public class MixinEntity implements StorageHolder {
     @Inject(method = "load", at = @At(value = "INVOKE", target = "Lnet/minecraft/world/entity/Entity;readAdditionalSaveData(Lnet/minecraft/nbt/CompoundTag;)V", shift = At.Shift.AFTER))
     void loadStorage(CompoundTag compound, CallbackInfo ci) {
         if (this.eternalcore$storage != null) {
-            this.eternalcore$storage.load(compound.getCompound(STORAGE_TAG_KEY));
+            this.eternalcore$storage.loadDeferred(compound.getCompound(STORAGE_TAG_KEY));
         }
 
     }
-
-    @Inject(method = "tick", at = @At("RETURN"))
-    void onTickSyncCheck(CallbackInfo ci) {
-        if (this.level.isClientSide) return;
-        this.level.getProfiler().push("eternalCoreSyncCheck");
-        if (this.eternalcore$storage.isDirty()) StorageManager.syncTracking((Entity) (Object) this, true);
-        this.level.getProfiler().pop();
-    }
 }
@@ -38,7 +38,7 @@ public abstract class MixinLevel implements StorageHolder, LevelAccessor {
     @Nullable
     @Override
     public <T extends AbstractStorage> T eternalCore$getStorage(StorageKey<T> storageKey) {
-        return (T) this.storage.get(storageKey.id());
+        return (T) this.storage.get(storageKey);
     }
 
     @Override
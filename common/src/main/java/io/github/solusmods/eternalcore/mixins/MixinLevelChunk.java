@@ -10,6 +10,7 @@ import io.github.solusmods.eternalcore.impl.storage.StorageManager;
 import net.minecraft.core.Registry;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.Level;
@@ -46,7 +47,7 @@ public abstract class MixinLevelChunk extends ChunkAccess implements StorageHold
     @Nullable
     @Override
     public <T extends AbstractStorage> T eternalCore$getStorage(StorageKey<T> storageKey) {
-        return (T) this.storage.get(storageKey.id());
+        return (T) this.storage.get(storageKey);
     }
 
     @Override
@@ -78,7 +79,16 @@ public abstract class MixinLevelChunk extends ChunkAccess implements StorageHold
     void initStorage(Level level, ChunkPos pos, UpgradeData data, LevelChunkTicks blockTicks, LevelChunkTicks fluidTicks, long inhabitedTime, LevelChunkSection[] sections, LevelChunk.PostLoadProcessor postLoad, BlendingData blendingData, CallbackInfo ci) {
         if (this.storage == null) {
             this.storage = new CombinedStorage(this);
+            // Chunks read from disk are created on worker threads and published in runPostLoad
+            if (level instanceof ServerLevel serverLevel && !serverLevel.getServer().isSameThread()) {
+                this.storage.detach();
+            }
             StorageManager.initialStorageFilling(this);
         }
     }
+
+    @Inject(method = "runPostLoad", at = @At("HEAD"))
+    void publishStorage(CallbackInfo ci) {
+        if (this.storage != null) this.storage.publish();
+    }
 }
@@ -0,0 +1,22 @@
+package io.github.solusmods.eternalcore.mixins;
+
+import io.github.solusmods.eternalcore.impl.storage.StorageManager;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.network.PlayerChunkSender;
+import net.minecraft.server.network.ServerGamePacketListenerImpl;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(PlayerChunkSender.class)
+public class MixinPlayerChunkSender {
+    /**
+     * Sends the chunk storages right after the chunk itself, since new and loaded storages are not dirty.
+     */
+    @Inject(method = "sendChunk", at = @At("TAIL"))
+    private static void syncStorageOnSend(ServerGamePacketListenerImpl packetListener, ServerLevel level, LevelChunk chunk, CallbackInfo ci) {
+        StorageManager.syncStartTracking(chunk, packetListener.player);
+    }
+}
@@ -0,0 +1,27 @@
+package io.github.solusmods.eternalcore.mixins;
+
+import io.github.solusmods.eternalcore.impl.storage.StorageManager;
+import net.minecraft.server.level.ServerEntity;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.Entity;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ServerEntity.class)
+public class MixinServerEntity {
+    @Shadow
+    @Final
+    private Entity entity;
+
+    /**
+     * Sends the entity storages once the client knows the entity, since new and loaded storages are not dirty.
+     */
+    @Inject(method = "addPairing", at = @At("TAIL"))
+    private void syncStorageOnPairing(ServerPlayer player, CallbackInfo ci) {
+        StorageManager.syncStartTracking(this.entity, player);
+    }
+}
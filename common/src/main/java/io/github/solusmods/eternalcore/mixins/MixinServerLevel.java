@@ -1,7 +1,7 @@
 package io.github.solusmods.eternalcore.mixins;
 
-import io.github.solusmods.eternalcore.impl.storage.StorageManager;
 import io.github.solusmods.eternalcore.impl.storage.StoragePersistentState;
+import io.github.solusmods.eternalcore.impl.storage.sidecar.ChunkStorageSidecar;
 import net.minecraft.core.Holder;
 import net.minecraft.core.RegistryAccess;
 import net.minecraft.resources.ResourceKey;
@@ -28,7 +28,6 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
 import java.util.List;
 import java.util.concurrent.Executor;
-import java.util.function.BooleanSupplier;
 import java.util.function.Supplier;
 
 @Mixin(ServerLevel.class)
@@ -47,29 +46,11 @@ public abstract class MixinServerLevel extends Level {
     @Shadow
     public abstract List<ServerPlayer> players();
 
-    @Inject(method = "tickChunk", at = @At("RETURN"))
-    private void onPostTickChunk(LevelChunk pChunk, int pRandomTickSpeed, CallbackInfo ci) {
-        ProfilerFiller profiler = getProfiler();
-        profiler.push("eternalCoreSyncCheck");
-        if (pChunk.eternalCore$getCombinedStorage().isDirty()) {
-            pChunk.setUnsaved(true);
-            StorageManager.syncTracking(pChunk, true);
-        }
-        profiler.pop();
-    }
-
     @Override
     public Iterable<ServerPlayer> eternalCore$getTrackingPlayers() {
         return this.players;
     }
 
-    @Inject(method = "tick", at = @At(value = "INVOKE", target = "Lnet/minecraft/util/profiling/ProfilerFiller;popPush(Ljava/lang/String;)V", ordinal = 1, shift = At.Shift.AFTER))
-    private void onTick(BooleanSupplier hasTimeLeft, CallbackInfo ci) {
-        getProfiler().push("eternalCoreSyncCheck");
-        if (eternalCore$getCombinedStorage().isDirty()) StorageManager.syncTracking(this, true);
-        getProfiler().pop();
-    }
-
     @Inject(method = "<init>", at = @At("RETURN"))
     private void loadStorage(MinecraftServer server, Executor dispatcher, LevelStorageSource.LevelStorageAccess levelStorageAccess, ServerLevelData serverLevelData, ResourceKey dimension, LevelStem levelStem, ChunkProgressListener progressListener, boolean isDebug, long biomeZoomSeed, List customSpawners, boolean tickTime, RandomSequences randomSequences, CallbackInfo ci) {
         try {
@@ -79,4 +60,9 @@ public abstract class MixinServerLevel extends Level {
             StoragePersistentState.LOADING.set(false);
         }
     }
+
+    @Inject(method = "unload", at = @At("HEAD"))
+    private void onUnloadChunk(LevelChunk chunk, CallbackInfo ci) {
+        ChunkStorageSidecar.onChunkUnload((ServerLevel) (Object) this, chunk);
+    }
 }